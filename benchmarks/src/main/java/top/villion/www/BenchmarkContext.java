@@ -0,0 +1,123 @@
+package top.villion.www;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基准测试用的应用上下文：H2 内存库（MySQL 兼容模式）代替 MySQL，随机端口
+ */
+final class BenchmarkContext {
+
+    private static final String[] GENDERS = {"男", "女"};
+    private static final String[] REGIONS = {"北京", "上海", "广州", "深圳", "杭州", "成都", "武汉", "西安"};
+    private static final String REPLICA_USER = "replica";
+
+    private BenchmarkContext() {
+    }
+
+    /**
+     * 启动应用，extraArgs 形如 --key=value，可覆盖默认配置
+     */
+    static ConfigurableApplicationContext start(String... extraArgs) {
+        List<String> defaults = List.of(
+                "--spring.datasource.url=" + newDatabaseUrl(),
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                "--spring.jpa.hibernate.ddl-auto=create-drop",
+                "--spring.jpa.show-sql=false",
+                "--server.port=0",
+                "--logging.level.root=WARN",
+                "--app.message-log.dir=" + tempDir("bench-message-log-"),
+                // 撮合由基准测试主动驱动
+                "--match.tick-interval-ms=3600000");
+        // 同名参数会被 Spring 拼接成逗号分隔的值，因此这里按键去重，后出现的覆盖先出现的
+        Map<String, String> args = new LinkedHashMap<>();
+        for (String arg : defaults) {
+            args.put(optionName(arg), arg);
+        }
+        for (String arg : extraArgs) {
+            args.put(optionName(arg), arg);
+        }
+        return SpringApplication.run(DatingAppApplication.class, args.values().toArray(new String[0]));
+    }
+
+    /**
+     * 以读写分离方式启动：主库和从库是两个独立的连接池，连到同一个内存库（相当于没有复制延迟的从库），
+     * 从库池用只有 SELECT 权限的账号登录，误路由到从库的写操作会直接报错（和真实的只读从库一样）；
+     * 只读事务的连接走从库池，路由结果见 db.connection.route 指标
+     */
+    static ConfigurableApplicationContext startWithReplica(String... extraArgs) {
+        String url = newDatabaseUrl();
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            // 库由第一个连接创建，sa 为管理员；按 schema 授权，之后建的表同样只读
+            statement.execute("create user if not exists " + REPLICA_USER + " password '" + REPLICA_USER + "'");
+            statement.execute("grant select on schema public to " + REPLICA_USER);
+        } catch (SQLException e) {
+            throw new IllegalStateException("创建只读从库账号失败", e);
+        }
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.url=" + url,
+                "--" + DataSourceConfig.ROUTING_PROPERTY + "=true",
+                "--app.datasource.replica-urls=" + url,
+                "--app.datasource.replica-username=" + REPLICA_USER,
+                "--app.datasource.replica-password=" + REPLICA_USER));
+        args.addAll(List.of(extraArgs));
+        return start(args.toArray(new String[0]));
+    }
+
+    private static String newDatabaseUrl() {
+        return "jdbc:h2:mem:bench-" + System.nanoTime() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    }
+
+    static String tempDir(String prefix) {
+        return Paths.get(System.getProperty("java.io.tmpdir"), prefix + System.nanoTime()).toString();
+    }
+
+    private static String optionName(String arg) {
+        int eq = arg.indexOf('=');
+        return eq < 0 ? arg : arg.substring(0, eq);
+    }
+
+    /**
+     * 批量插入用户，返回用户ID（按插入顺序）
+     * 主键直接指定，插入后调整主键分配段，之后应用内注册的用户不会冲突
+     */
+    static long[] seedUsers(ConfigurableApplicationContext context, int count) {
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        long base = jdbc.queryForObject("select coalesce(max(id), 0) from users", Long.class);
+        List<Object[]> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(new Object[]{base + i + 1, "bench_" + (base + i), "password", GENDERS[i % GENDERS.length],
+                    18 + i % 22, REGIONS[i % REGIONS.length]});
+        }
+        jdbc.batchUpdate("insert into users (id, username, password, gender, age, region, created_at) "
+                + "values (?, ?, ?, ?, ?, ?, current_timestamp)", rows);
+        context.getBean(IdGenerators.class).align();
+        return jdbc.queryForList("select id from users where id > ? order by id", Long.class, base)
+                .stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * 创建房间，返回房间ID
+     */
+    static long createRoom(ConfigurableApplicationContext context, String name, int capacity) {
+        Room room = new Room();
+        room.setName(name);
+        room.setMaxCapacity(capacity);
+        return context.getBean(RoomService.class).createRoom(room, null).getId();
+    }
+}
@@ -0,0 +1,53 @@
+package top.villion.www;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChatController 随机匹配完整路径：两人请求匹配 -> 撮合 -> 建临时房间 -> 双方加入 -> 推送结果
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChatControllerBenchmark {
+
+    private static final int USERS = 2_000;
+
+    private ConfigurableApplicationContext context;
+    private ChatController chatController;
+    private long[] userIds;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        chatController = context.getBean(ChatController.class);
+        userIds = BenchmarkContext.seedUsers(context, USERS);
+        // 撮合跳过离线用户；匹配结果只发给订阅了 /user/queue/match 的用户，登记 JSON 订阅以包含推送开销
+        PresenceRegistry presenceRegistry = context.getBean(PresenceRegistry.class);
+        MatchSubscriptions matchSubscriptions = context.getBean(MatchSubscriptions.class);
+        for (long userId : userIds) {
+            presenceRegistry.connect("bench-" + userId, userId);
+            matchSubscriptions.add("bench-" + userId, "match", userId, false);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void randomMatchPair() {
+        chatController.handleRandomMatch(new MatchRequest(), new UserPrincipal(userIds[next]));
+        chatController.handleRandomMatch(new MatchRequest(), new UserPrincipal(userIds[next + 1]));
+        chatController.matchTick();
+        next = (next + 2) % USERS;
+    }
+
+}
@@ -0,0 +1,62 @@
+package top.villion.www;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户发现筛选：USERS 个用户的属性位图索引上执行 性别 AND 年龄段 AND 地区（OR）NOT 排除地区，再分页或随机抽样
+ * 纯内存，不含资料查询和序列化
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class DiscoveryBenchmark {
+
+    static final int USERS = 2_000_000;
+
+    private static final String[] GENDERS = {"男", "女"};
+    private static final String[] REGIONS = {"北京", "上海", "广州", "深圳", "杭州", "成都", "武汉", "西安",
+            "南京", "重庆", "天津", "苏州", "长沙", "郑州", "青岛", "沈阳"};
+
+    private UserAttributeIndex index;
+    private UserAttributeIndex.Filter filter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        index = new UserAttributeIndex(null, new FollowGraph(null));
+        SplittableRandom random = new SplittableRandom(42);
+        for (long id = 1; id <= USERS; id++) {
+            index.index(id, GENDERS[random.nextInt(GENDERS.length)], 18 + random.nextInt(43),
+                    REGIONS[random.nextInt(REGIONS.length)]);
+        }
+        filter = new UserAttributeIndex.Filter(Set.of("女"), 22, 30, Set.of("北京", "上海", "杭州"), Set.of());
+    }
+
+    @Benchmark
+    public long[] firstPage() {
+        return index.search(1L, filter, 0, 20, false);
+    }
+
+    @Benchmark
+    public long[] deepPage() {
+        return index.search(1L, filter, USERS / 2, 20, false);
+    }
+
+    @Benchmark
+    public long[] randomSample() {
+        return index.search(1L, filter, 0, 20, true);
+    }
+
+    /** 只按地区排除：结果接近全部用户 */
+    @Benchmark
+    public long[] broadFilter() {
+        return index.search(1L, new UserAttributeIndex.Filter(Set.of(), null, null, Set.of(), Set.of("北京")),
+                0, 20, true);
+    }
+}
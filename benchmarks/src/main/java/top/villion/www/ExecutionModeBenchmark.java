@@ -0,0 +1,87 @@
+package top.villion.www;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 执行模式对比：一批阻塞的 JPA 调用分别提交到有界线程池和虚拟线程执行器
+ *
+ * virtual 需要在 Java 21 上运行；Java 17 上请用 -p mode=pooled
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExecutionModeBenchmark {
+
+    private static final int USERS = 10_000;
+    private static final int TASKS = 1_000;
+
+    @Param({ExecutionConfig.POOLED, ExecutionConfig.VIRTUAL})
+    String mode;
+
+    /** Hikari 连接池大小 */
+    @Param({"10", "50"})
+    int connections;
+
+    private ConfigurableApplicationContext context;
+    private UserRepository userRepository;
+    private TaskExecutor executor;
+    private long[] userIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start("--spring.datasource.hikari.maximum-pool-size=" + connections);
+        userRepository = context.getBean(UserRepository.class);
+        userIds = BenchmarkContext.seedUsers(context, USERS);
+
+        if (ExecutionConfig.VIRTUAL.equals(mode)) {
+            ExecutionConfig.requireVirtualThreads();
+            executor = new VirtualThreadTaskExecutor("bench-");
+        } else {
+            // 与 STOMP 入站通道默认配置一致
+            ThreadPoolTaskExecutor pool = new ThreadPoolTaskExecutor();
+            pool.setCorePoolSize(16);
+            pool.setMaxPoolSize(64);
+            pool.setQueueCapacity(10_000);
+            pool.initialize();
+            executor = pool;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (executor instanceof ThreadPoolTaskExecutor pool) {
+            pool.shutdown();
+        }
+        context.close();
+    }
+
+    /** 完成 TASKS 次阻塞主键查询所需时间 */
+    @Benchmark
+    @OperationsPerInvocation(TASKS)
+    public void blockingJpaLookups() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(TASKS);
+        SplittableRandom random = new SplittableRandom();
+        for (int i = 0; i < TASKS; i++) {
+            long userId = userIds[random.nextInt(USERS)];
+            executor.execute(() -> {
+                try {
+                    userRepository.findProfileById(userId);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+}
@@ -0,0 +1,94 @@
+package top.villion.www;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 关注关系查询：内存关系图 vs 原先的数据库查询
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FollowLookupBenchmark {
+
+    private static final int USERS = 5_000;
+    private static final int FOLLOWS_PER_USER = 50;
+    private static final int FEED_SIZE = 200;
+
+    private ConfigurableApplicationContext context;
+    private FollowService followService;
+    private FollowRepository followRepository;
+    private long[] userIds;
+    private List<Long> feed;
+    private final SplittableRandom random = new SplittableRandom(7);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        followService = context.getBean(FollowService.class);
+        followRepository = context.getBean(FollowRepository.class);
+        userIds = BenchmarkContext.seedUsers(context, USERS);
+
+        List<Object[]> rows = new ArrayList<>(USERS * FOLLOWS_PER_USER);
+        SplittableRandom seed = new SplittableRandom(1);
+        for (long follower : userIds) {
+            seed.ints(0, USERS).distinct().limit(FOLLOWS_PER_USER)
+                    .filter(i -> userIds[i] != follower)
+                    .forEach(i -> rows.add(new Object[]{follower, userIds[i]}));
+        }
+        context.getBean(JdbcTemplate.class)
+                .batchUpdate("insert into follows (follower_id, followee_id) values (?, ?)", rows);
+        context.getBean(FollowGraph.class).load();
+
+        feed = new ArrayList<>(FEED_SIZE);
+        for (int i = 0; i < FEED_SIZE; i++) {
+            feed.add(userIds[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean isFollowingGraph() {
+        return followService.isFollowing(randomUser(), randomUser());
+    }
+
+    @Benchmark
+    public boolean isFollowingDatabase() {
+        return followRepository.existsByFollowerIdAndFolloweeId(randomUser(), randomUser());
+    }
+
+    /** 一屏 200 个用户的关系状态 */
+    @Benchmark
+    public Map<Long, Integer> relationshipsForFeed() {
+        return followService.getRelationships(randomUser(), feed);
+    }
+
+    @Benchmark
+    public long[] mutuals() {
+        return followService.getMutualIds(randomUser());
+    }
+
+    /** 关注列表（含加载用户实体） */
+    @Benchmark
+    public List<User> getFollowing() {
+        return followService.getFollowing(randomUser());
+    }
+
+    private long randomUser() {
+        return userIds[random.nextInt(USERS)];
+    }
+}
@@ -0,0 +1,81 @@
+package top.villion.www;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 撮合引擎吞吐：每次调用入队 WAITERS 个用户并执行一轮撮合（纯内存，不含建房和推送）
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MatchmakingBenchmark {
+
+    static final int WAITERS = 10_000;
+
+    private static final String[] GENDERS = {"男", "女"};
+    private static final String[] REGIONS = {"北京", "上海", "广州", "深圳", "杭州", "成都", "武汉", "西安"};
+
+    /** 有偏好（只匹配异性）的用户占比 */
+    @Param({"0", "50"})
+    int preferencePercent;
+
+    private String[] gender;
+    private String[] region;
+    private String[] preferred;
+    private int[] age;
+    private PresenceRegistry presenceRegistry;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        gender = new String[WAITERS];
+        region = new String[WAITERS];
+        preferred = new String[WAITERS];
+        age = new int[WAITERS];
+        // 撮合跳过离线用户，全部登记为在线
+        presenceRegistry = new PresenceRegistry();
+        for (int i = 0; i < WAITERS; i++) {
+            presenceRegistry.connect("bench-" + i, (long) i);
+            gender[i] = GENDERS[random.nextInt(GENDERS.length)];
+            region[i] = REGIONS[random.nextInt(REGIONS.length)];
+            age[i] = 18 + random.nextInt(25);
+            preferred[i] = random.nextInt(100) < preferencePercent ? GENDERS[gender[i].equals("男") ? 1 : 0] : null;
+        }
+    }
+
+    /**
+     * 返回值为本轮撮合的对数；ops 按入队人数计
+     */
+    @Benchmark
+    @OperationsPerInvocation(WAITERS)
+    public int enqueueAndTick(Blackhole bh) {
+        MatchmakingEngine engine = new MatchmakingEngine(120, Integer.MAX_VALUE, presenceRegistry);
+        for (int i = 0; i < WAITERS; i++) {
+            engine.enqueue((long) i, gender[i], age[i], region[i], preferred[i]);
+        }
+        return engine.tick((a, b) -> bh.consume(a));
+    }
+
+    /**
+     * 取消路径：入队后全部取消，再执行一轮撮合（惰性清理）
+     */
+    @Benchmark
+    @OperationsPerInvocation(WAITERS)
+    public int enqueueCancelTick(Blackhole bh) {
+        MatchmakingEngine engine = new MatchmakingEngine(120, Integer.MAX_VALUE, presenceRegistry);
+        for (int i = 0; i < WAITERS; i++) {
+            engine.enqueue((long) i, gender[i], age[i], region[i], preferred[i]);
+        }
+        for (int i = 0; i < WAITERS; i += 2) {
+            engine.cancel((long) i);
+        }
+        return engine.tick((a, b) -> bh.consume(a));
+    }
+}
@@ -0,0 +1,66 @@
+package top.villion.www;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 消息日志追加吞吐：多个发送线程同时追加，单个写线程批量写入内存映射段并组提交
+ *
+ * 每次调用追加 BATCH 条后等待写入队列清空，ops 按消息条数计，即写线程实际落盘的速度。
+ * 段大小设为 8MB，测量期间会多次滚动段；结束时打印日志字节数和丢弃条数。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class MessageLogBenchmark {
+
+    static final int BATCH = 1_000;
+    private static final int ROOMS = 1_000;
+
+    /** 消息内容字节数（ASCII） */
+    @Param({"64", "512"})
+    int contentBytes;
+
+    private MessageLog messageLog;
+    private String content;
+    private final AtomicLong seq = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        messageLog = new MessageLog(true, BenchmarkContext.tempDir("bench-message-log-"), 8 << 20,
+                1, Long.MAX_VALUE, 65536, null);
+        messageLog.open();
+        content = "x".repeat(contentBytes);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        messageLog.close();
+        System.out.printf("message.log.bytes = %d, message.log.dropped = %d%n",
+                messageLog.totalBytes(), messageLog.droppedCount());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void append() {
+        for (int i = 0; i < BATCH; i++) {
+            long n = seq.incrementAndGet();
+            RoomMessage message = new RoomMessage();
+            message.setRoomId(1 + n % ROOMS);
+            message.setSenderId(n);
+            message.setContent(content);
+            message.setTimestamp(System.currentTimeMillis());
+            message.setSeq(n / ROOMS + 1);
+            messageLog.append(message);
+        }
+        while (messageLog.pending() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package top.villion.www;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 读写分离：大厅列表（只读事务）在只有主库和主库 + 从库两种配置下的吞吐
+ *
+ * 主库连接池刻意设小，模拟主库连接被写流量占满；routing=true 时只读事务改走从库池。
+ * 结束时打印 db.connection.route 计数，确认只读事务确实落在从库。
+ * 从库账号只读；routing=true 时启动后先通过 HTTP 走一遍"先读后写"的请求（PUT、DELETE /users/{id}），
+ * 确认 open-in-view 下同一请求里的写事务没有沿用只读查询取到的从库连接。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class ReadRoutingBenchmark {
+
+    private static final int ROOMS = 500;
+
+    @Param({"false", "true"})
+    boolean routing;
+
+    private ConfigurableApplicationContext context;
+    private RoomService roomService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String poolSize = "--spring.datasource.hikari.maximum-pool-size=4";
+        context = routing ? BenchmarkContext.startWithReplica(poolSize) : BenchmarkContext.start(poolSize);
+        roomService = context.getBean(RoomService.class);
+        for (int i = 0; i < ROOMS; i++) {
+            BenchmarkContext.createRoom(context, "大厅房间-" + i, 8);
+        }
+        if (routing) {
+            verifyWritesAfterReads();
+        }
+    }
+
+    // 两个接口都先做只读查询（findById / existsById）再写；写落到从库时返回 500，RestTemplate 抛异常
+    private void verifyWritesAfterReads() {
+        String baseUrl = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port");
+        RestTemplate restTemplate = new RestTemplate();
+        long userId = BenchmarkContext.seedUsers(context, 1)[0];
+        restTemplate.put(baseUrl + "/users/" + userId, Map.of("region", "上海"));
+        restTemplate.delete(baseUrl + "/users/" + userId);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        MeterRegistry registry = context.getBean(MeterRegistry.class);
+        for (String route : new String[]{AppMetrics.ROUTE_PRIMARY, AppMetrics.ROUTE_REPLICA, AppMetrics.ROUTE_STICKY}) {
+            System.out.printf("db.connection.route{route=%s} = %.0f%n", route,
+                    registry.counter("db.connection.route", "route", route).count());
+        }
+        context.close();
+    }
+
+    @Benchmark
+    public RoomLobbyPage lobbyPage() {
+        return roomService.getRoomSummaries(RoomServiceImpl.SORT_RECENT, null, 50);
+    }
+}
@@ -0,0 +1,75 @@
+package top.villion.www;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 同一房间的并发加入/离开：多线程争抢同一个房间的 member_count
+ *
+ * capacity 小于线程数时部分加入会因"房间已满"失败；结束时校验房间没有超员
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class RoomJoinContentionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        @Param({"8", "1000"})
+        int capacity;
+
+        ConfigurableApplicationContext context;
+        RoomService roomService;
+        long roomId;
+        long[] userIds;
+        final AtomicInteger nextUser = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            context = BenchmarkContext.start();
+            roomService = context.getBean(RoomService.class);
+            userIds = BenchmarkContext.seedUsers(context, 256);
+            roomId = BenchmarkContext.createRoom(context, "并发测试房间", capacity);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+            Integer counted = jdbc.queryForObject("select member_count from rooms where id = ?", Integer.class, roomId);
+            Integer actual = jdbc.queryForObject("select count(*) from room_members where room_id = ?", Integer.class, roomId);
+            context.close();
+            if (counted == null || actual == null || counted > capacity || !counted.equals(actual)) {
+                throw new IllegalStateException("房间计数不一致: member_count=" + counted
+                        + ", room_members=" + actual + ", capacity=" + capacity);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PerThread {
+        long userId;
+
+        @Setup(Level.Trial)
+        public void setUp(Shared shared) {
+            userId = shared.userIds[shared.nextUser.getAndIncrement() % shared.userIds.length];
+        }
+    }
+
+    @Benchmark
+    public void joinThenLeave(Shared shared, PerThread self, Blackhole bh) {
+        try {
+            bh.consume(shared.roomService.joinRoom(shared.roomId, self.userId));
+        } catch (RuntimeException e) {
+            bh.consume(e); // 房间已满
+        }
+        bh.consume(shared.roomService.leaveRoom(shared.roomId, self.userId));
+    }
+}
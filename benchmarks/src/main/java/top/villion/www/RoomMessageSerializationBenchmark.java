@@ -0,0 +1,127 @@
+package top.villion.www;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * handleRoomMessage 的出站序列化：STOMP 默认的 MappingJackson2MessageConverter 对比紧凑编码（CompactMessageConverter）
+ *
+ * 每条消息字节数在 Setup 时打印：compact 为稳态（发送者资料已通过字典公布），
+ * compactWithDictionary 为发送者第一次出现、资料随帧公布的情况。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RoomMessageSerializationBenchmark {
+
+    private static final int BATCH_SIZE = 20;
+
+    private MappingJackson2MessageConverter converter;
+    private CompactMessageConverter compactConverter;
+    private RoomMessage message;
+    private UserProfile sender;
+    private List<RoomMessage> batch;
+    private byte[] encoded;
+    private byte[] compactEncoded;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(objectMapper);
+
+        message = new RoomMessage();
+        message.setRoomId(1024L);
+        message.setSenderId(987654L);
+        message.setSenderName("周末桌游局的常客");
+        message.setSenderAvatar("https://picsum.photos/200/200?random=42");
+        message.setContent("今晚八点老地方见，记得带上新买的扩展包！");
+        message.setSendTime("2024-10-01 20:00:00");
+        message.setTimestamp(1727784000000L);
+        sender = new UserProfile(message.getSenderId(), message.getSenderName(), message.getSenderAvatar(),
+                null, null, null);
+
+        compactConverter = new CompactMessageConverter();
+        batch = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            RoomMessage m = new RoomMessage();
+            m.setRoomId(message.getRoomId());
+            m.setSenderId(message.getSenderId() + i % 4);
+            m.setContent(message.getContent());
+            m.setTimestamp(message.getTimestamp() + i * 150L);
+            batch.add(m);
+        }
+
+        encoded = (byte[]) toMessage().getPayload();
+        compactEncoded = (byte[]) serializeCompact().getPayload();
+        int withDictionary = ((byte[]) serializeCompactWithDictionary().getPayload()).length;
+        int batchBytes = ((byte[]) serializeCompactBatch().getPayload()).length;
+        System.out.printf("%n每条消息字节数: json=%d compact=%d compactWithDictionary=%d compactBatch(%d 条)=%.1f%n",
+                encoded.length, compactEncoded.length, withDictionary, BATCH_SIZE, (double) batchBytes / BATCH_SIZE);
+    }
+
+    @Benchmark
+    public Message<?> serialize() {
+        return toMessage();
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return converter.fromMessage(MessageBuilder.createMessage(encoded, headers().getMessageHeaders()), RoomMessage.class);
+    }
+
+    @Benchmark
+    public Message<?> serializeCompact() {
+        return compactConverter.toMessage(new CompactRoomFrame(message.getRoomId(), List.of(), List.of(message)),
+                compactHeaders().getMessageHeaders());
+    }
+
+    @Benchmark
+    public Message<?> serializeCompactWithDictionary() {
+        return compactConverter.toMessage(new CompactRoomFrame(message.getRoomId(), List.of(sender), List.of(message)),
+                compactHeaders().getMessageHeaders());
+    }
+
+    /** 一帧 BATCH_SIZE 条，按条计时 */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Message<?> serializeCompactBatch() {
+        return compactConverter.toMessage(new CompactRoomFrame(message.getRoomId(), List.of(), batch),
+                compactHeaders().getMessageHeaders());
+    }
+
+    @Benchmark
+    public Object deserializeCompact() {
+        return compactConverter.fromMessage(MessageBuilder.createMessage(compactEncoded, compactHeaders().getMessageHeaders()),
+                RoomMessage.class);
+    }
+
+    private Message<?> toMessage() {
+        return converter.toMessage(message, headers().getMessageHeaders());
+    }
+
+    private static SimpMessageHeaderAccessor headers() {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination("/topic/rooms/1024");
+        return accessor;
+    }
+
+    private static SimpMessageHeaderAccessor compactHeaders() {
+        SimpMessageHeaderAccessor accessor = headers();
+        accessor.setContentType(CompactCodec.MIME_TYPE);
+        return accessor;
+    }
+}
@@ -0,0 +1,68 @@
+package top.villion.www;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 房间搜索：n-gram 倒排索引 vs LIKE '%kw%'
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoomSearchBenchmark {
+
+    private static final int ROOMS = 20_000;
+    private static final String[] PREFIXES = {"周末", "深夜", "北京", "上海", "同城", "校园", "Chill", "Happy"};
+    private static final String[] TOPICS = {"桌游", "音乐", "电影", "读书", "跑步", "咖啡", "旅行", "游戏", "摄影", "美食"};
+    private static final String[] SUFFIXES = {"局", "俱乐部", "爱好者", "小组", "聊天室", "club"};
+
+    @Param({"桌", "桌游", "桌游爱好者", "club"})
+    String keyword;
+
+    private ConfigurableApplicationContext context;
+    private RoomService roomService;
+    private RoomRepository roomRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        roomService = context.getBean(RoomService.class);
+        roomRepository = context.getBean(RoomRepository.class);
+
+        SplittableRandom random = new SplittableRandom(3);
+        List<Object[]> rows = new ArrayList<>(ROOMS);
+        for (int i = 0; i < ROOMS; i++) {
+            String topic = TOPICS[random.nextInt(TOPICS.length)];
+            String name = PREFIXES[random.nextInt(PREFIXES.length)] + topic + SUFFIXES[random.nextInt(SUFFIXES.length)];
+            rows.add(new Object[]{i + 1, name, "一起聊聊" + topic});
+        }
+        context.getBean(JdbcTemplate.class).batchUpdate("insert into rooms (id, name, description, max_capacity, "
+                + "member_count, created_at) values (?, ?, ?, 8, 0, current_timestamp)", rows);
+        context.getBean(IdGenerators.class).align();
+        context.getBean(RoomSearchIndex.class).load();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<RoomSearchHit> ngramIndex() {
+        return roomService.searchRooms(keyword, 20);
+    }
+
+    @Benchmark
+    public List<Room> likeQuery() {
+        return roomRepository.findByNameContainingIgnoreCase(keyword);
+    }
+}
@@ -0,0 +1,399 @@
+package top.villion.www;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * STOMP 压测工具：进程内启动应用（H2 内存库），模拟大量 SockJS 客户端
+ *
+ * 每个客户端通过 /users/register 注册、POST /rooms/{roomId}/join 加入房间，连接 /ws 后订阅房间主题，
+ * 按给定速率发送 /app/roomMessage；其中一部分客户端循环发送 /app/randomMatch。
+ * 结束时输出端到端投递延迟、匹配等待时间（HdrHistogram 百分位）和吞吐量。
+ *
+ * java -cp benchmarks/target/benchmarks.jar top.villion.www.StompLoadTest \
+ *      --load.clients=2000 --load.rooms=100 --load.rate=1 --load.duration=60
+ *
+ * 压测参数（--load.*）：
+ *   clients   客户端数（默认 1000）
+ *   rooms     房间数（默认 clients/20）
+ *   rate      每个客户端每秒发送的房间消息数（默认 1）
+ *   matchers  参与随机匹配的客户端比例（默认 0.1）
+ *   warmup    预热秒数，预热期间的数据不计入结果（默认 10）
+ *   duration  统计秒数（默认 60）
+ *   senders   发送线程数（默认 CPU 核数）
+ *   batch     是否以批量方式接收房间消息（默认 false，需同时传 --app.coalesce.enabled=true）
+ *   compact   是否使用紧凑编码接收（默认 false）
+ * 其余参数原样传给应用，如 --app.execution.mode=virtual。
+ * 客户端较多时注意调大进程文件句柄上限（ulimit -n）。
+ */
+public class StompLoadTest {
+
+    private static final String LOAD_PREFIX = "--load.";
+    private static final String ORIGIN = "http://127.0.0.1:5500"; // 与 WebSocketConfig 允许的来源一致
+    private static final String PAYLOAD_PREFIX = "lt:";
+    private static final long TICK_MILLIS = 100;
+    private static final long MATCH_PAUSE_NANOS = TimeUnit.SECONDS.toNanos(1); // 匹配成功后再次匹配的间隔
+    private static final String[] GENDERS = {"男", "女"};
+    private static final String[] REGIONS = {"北京", "上海", "广州", "深圳"};
+
+    // 单位：微秒
+    private final Recorder deliveryLatency = new Recorder(3);
+    private final Recorder matchWait = new Recorder(3);
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder expectedDeliveries = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder matchRequests = new LongAdder();
+    private final LongAdder matches = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    private final int clients;
+    private final int rooms;
+    private final double rate;
+    private final double matchers;
+    private final int warmupSeconds;
+    private final int durationSeconds;
+    private final int senders;
+    private final boolean batch;
+    private final boolean compact;
+
+    private String baseUrl;
+    private final RestTemplate restTemplate = new RestTemplate();
+    private WebSocketStompClient stompClient;
+
+    StompLoadTest(Map<String, String> options) {
+        this.clients = Integer.parseInt(options.getOrDefault("clients", "1000"));
+        this.rooms = Math.max(1, Integer.parseInt(options.getOrDefault("rooms", String.valueOf(clients / 20))));
+        this.rate = Double.parseDouble(options.getOrDefault("rate", "1"));
+        this.matchers = Double.parseDouble(options.getOrDefault("matchers", "0.1"));
+        this.warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "10"));
+        this.durationSeconds = Integer.parseInt(options.getOrDefault("duration", "60"));
+        this.senders = Integer.parseInt(options.getOrDefault("senders",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        this.batch = Boolean.parseBoolean(options.getOrDefault("batch", "false"));
+        this.compact = Boolean.parseBoolean(options.getOrDefault("compact", "false"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> appArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith(LOAD_PREFIX) && arg.indexOf('=') > 0) {
+                int eq = arg.indexOf('=');
+                options.put(arg.substring(LOAD_PREFIX.length(), eq), arg.substring(eq + 1));
+            } else {
+                appArgs.add(arg);
+            }
+        }
+        // 撮合按正常节奏运行
+        appArgs.add(0, "--match.tick-interval-ms=50");
+
+        ConfigurableApplicationContext context = BenchmarkContext.start(appArgs.toArray(new String[0]));
+        try {
+            new StompLoadTest(options).run(context);
+        } finally {
+            context.close();
+        }
+    }
+
+    void run(ConfigurableApplicationContext context) throws Exception {
+        baseUrl = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port");
+
+        stompClient = new WebSocketStompClient(
+                new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        stompClient.setMessageConverter(new CompositeMessageConverter(
+                List.of(new CompactMessageConverter(), new MappingJackson2MessageConverter())));
+        stompClient.setDefaultHeartbeat(new long[]{0, 0});
+
+        System.out.printf("客户端 %d，房间 %d，每客户端 %.2f 条/秒，匹配比例 %.2f%n", clients, rooms, rate, matchers);
+
+        long[] roomIds = new long[rooms];
+        int capacity = (clients + rooms - 1) / rooms;
+        for (int i = 0; i < rooms; i++) {
+            roomIds[i] = BenchmarkContext.createRoom(context, "压测房间-" + i, capacity);
+        }
+
+        LoadClient[] all = connectAll(roomIds);
+        // 等待订阅在 Broker 生效
+        Thread.sleep(1000);
+
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(senders);
+        for (int t = 0; t < senders; t++) {
+            List<LoadClient> owned = new ArrayList<>();
+            for (int i = t; i < all.length; i += senders) {
+                owned.add(all[i]);
+            }
+            // 每个客户端只由一个线程发送，避免同一 WebSocket 会话并发写
+            scheduler.scheduleAtFixedRate(() -> owned.forEach(LoadClient::tick),
+                    t * TICK_MILLIS / senders, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+        resetStats();
+        long start = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Histogram latency = deliveryLatency.getIntervalHistogram();
+        Histogram wait = matchWait.getIntervalHistogram();
+
+        // 等正在执行的 tick 结束后再断开，避免与 DISCONNECT 在同一会话上并发写
+        scheduler.shutdown();
+        if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
+            scheduler.shutdownNow();
+        }
+        for (LoadClient client : all) {
+            try {
+                client.disconnect();
+            } catch (RuntimeException e) {
+                // 统计已结束，断开失败不影响结果输出
+            }
+        }
+        stompClient.stop();
+
+        System.out.printf("发送 %d 条（%.0f 条/秒），投递 %d/%d（%.0f 条/秒），错误 %d%n",
+                sent.sum(), sent.sum() / seconds, delivered.sum(), expectedDeliveries.sum(),
+                delivered.sum() / seconds, errors.sum());
+        System.out.printf("匹配请求 %d，匹配成功 %d 人次（%.1f 次/秒）%n",
+                matchRequests.sum(), matches.sum(), matches.sum() / seconds);
+        print("投递延迟", latency);
+        print("匹配等待", wait);
+    }
+
+    private LoadClient[] connectAll(long[] roomIds) throws Exception {
+        LoadClient[] all = new LoadClient[clients];
+        ExecutorService pool = Executors.newFixedThreadPool(32);
+        Semaphore inFlight = new Semaphore(256);
+        List<CompletableFuture<Void>> futures = new ArrayList<>(clients);
+        String run = Long.toString(System.currentTimeMillis() % 100_000, 36);
+        for (int i = 0; i < clients; i++) {
+            int index = i;
+            inFlight.acquire();
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    LoadClient client = new LoadClient(index, roomIds[index % roomIds.length],
+                            index < clients * matchers);
+                    client.register("lt" + run + "_" + index);
+                    client.joinRoom();
+                    client.connect();
+                    all[index] = client;
+                } finally {
+                    inFlight.release();
+                }
+            }, pool));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        pool.shutdown();
+        System.out.printf("%d 个客户端已连接%n", clients);
+        return all;
+    }
+
+    private void resetStats() {
+        deliveryLatency.reset();
+        matchWait.reset();
+        sent.reset();
+        expectedDeliveries.reset();
+        delivered.reset();
+        matchRequests.reset();
+        matches.reset();
+        errors.reset();
+    }
+
+    private static void print(String name, Histogram h) {
+        System.out.printf("%s（ms）: count=%d mean=%.2f p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f%n",
+                name, h.getTotalCount(), h.getMean() / 1000.0,
+                h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0,
+                h.getMaxValue() / 1000.0);
+    }
+
+    /**
+     * 单个模拟客户端；tick 只在所属发送线程中调用
+     */
+    private final class LoadClient extends StompSessionHandlerAdapter {
+
+        private final int index;
+        private final long roomId;
+        private final boolean matcher;
+        private Long userId;
+        private StompSession session;
+
+        private double credit;                        // 累积的待发消息数
+        private volatile long matchSentAt;             // 0 表示未在匹配中
+        private volatile long nextMatchAt;             // 下次发起匹配的时间（nanoTime）
+
+        LoadClient(int index, long roomId, boolean matcher) {
+            this.index = index;
+            this.roomId = roomId;
+            this.matcher = matcher;
+        }
+
+        @SuppressWarnings("unchecked")
+        void register(String username) {
+            Map<String, Object> user = Map.of(
+                    "username", username,
+                    "password", "password",
+                    "gender", GENDERS[index % GENDERS.length],
+                    "age", 18 + index % 20,
+                    "region", REGIONS[index % REGIONS.length]);
+            Map<String, Object> saved = restTemplate.postForObject(baseUrl + "/users/register", user, Map.class);
+            userId = ((Number) saved.get("id")).longValue();
+        }
+
+        void joinRoom() {
+            restTemplate.postForObject(baseUrl + "/rooms/" + roomId + "/join", Map.of("userId", userId), Map.class);
+        }
+
+        void connect() {
+            WebSocketHttpHeaders handshakeHeaders = new WebSocketHttpHeaders();
+            handshakeHeaders.set(HttpHeaders.ORIGIN, ORIGIN);
+            StompHeaders connectHeaders = new StompHeaders();
+            if (batch) {
+                connectHeaders.add(ClientCapabilities.HEADER, ClientCapabilities.ROOM_BATCH);
+            }
+            if (compact) {
+                connectHeaders.add(ClientCapabilities.HEADER, ClientCapabilities.COMPACT);
+            }
+            session = stompClient.connectAsync(baseUrl + "/ws?userId=" + userId, handshakeHeaders, connectHeaders, this)
+                    .join();
+            session.subscribe(RoomSubscriptionRegistry.destination(roomId), new StompFrameHandler() {
+                @Override
+                public Type getPayloadType(StompHeaders headers) {
+                    if (compact) {
+                        return CompactRoomFrame.class;
+                    }
+                    return batch ? RoomMessage[].class : RoomMessage.class;
+                }
+
+                @Override
+                public void handleFrame(StompHeaders headers, Object payload) {
+                    if (payload instanceof CompactRoomFrame frame) {
+                        frame.messages().forEach(LoadClient.this::onRoomMessage);
+                    } else if (payload instanceof RoomMessage[] messages) {
+                        for (RoomMessage message : messages) {
+                            onRoomMessage(message);
+                        }
+                    } else {
+                        onRoomMessage((RoomMessage) payload);
+                    }
+                }
+            });
+            if (matcher) {
+                session.subscribe("/user/queue/match", new StompFrameHandler() {
+                    @Override
+                    public Type getPayloadType(StompHeaders headers) {
+                        return MatchResult.class;
+                    }
+
+                    @Override
+                    public void handleFrame(StompHeaders headers, Object payload) {
+                        onMatched();
+                    }
+                });
+            }
+        }
+
+        void tick() {
+            try {
+                credit += rate * TICK_MILLIS / 1000.0;
+                for (; credit >= 1; credit--) {
+                    sendRoomMessage();
+                }
+                if (matcher && matchSentAt == 0 && System.nanoTime() >= nextMatchAt) {
+                    matchSentAt = System.nanoTime();
+                    session.send("/app/randomMatch", new MatchRequest());
+                    matchRequests.increment();
+                }
+            } catch (RuntimeException e) {
+                errors.increment();
+            }
+        }
+
+        private void sendRoomMessage() {
+            RoomMessage message = new RoomMessage();
+            message.setRoomId(roomId);
+            message.setSenderId(userId);
+            message.setContent(PAYLOAD_PREFIX + System.nanoTime());
+            session.send("/app/roomMessage", message);
+            sent.increment();
+            // 房间内每个客户端（含发送者本人）都会收到一份
+            expectedDeliveries.add(roomMembers());
+        }
+
+        private int roomMembers() {
+            int base = clients / rooms;
+            return index % rooms < clients % rooms ? base + 1 : base;
+        }
+
+        private void onRoomMessage(RoomMessage message) {
+            String content = message.getContent();
+            if (content == null || !content.startsWith(PAYLOAD_PREFIX)) {
+                return;
+            }
+            long sentAt = Long.parseLong(content, PAYLOAD_PREFIX.length(), content.length(), 10);
+            deliveryLatency.recordValue(Math.max(0, (System.nanoTime() - sentAt) / 1000));
+            delivered.increment();
+        }
+
+        private void onMatched() {
+            long start = matchSentAt;
+            long now = System.nanoTime();
+            if (start != 0) {
+                matchWait.recordValue((now - start) / 1000);
+            }
+            matches.increment();
+            nextMatchAt = now + MATCH_PAUSE_NANOS;
+            matchSentAt = 0;
+        }
+
+        void disconnect() {
+            if (session != null && session.isConnected()) {
+                session.disconnect();
+            }
+        }
+
+        @Override
+        public void handleException(StompSession session, StompCommand command,
+                                    StompHeaders headers, byte[] payload, Throwable exception) {
+            errors.increment();
+        }
+
+        @Override
+        public void handleTransportError(StompSession session, Throwable exception) {
+            errors.increment();
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            // ERROR 帧
+            errors.increment();
+        }
+    }
+}
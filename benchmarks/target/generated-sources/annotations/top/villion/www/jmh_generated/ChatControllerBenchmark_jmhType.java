@@ -0,0 +1,4 @@
+package top.villion.www.jmh_generated;
+public class ChatControllerBenchmark_jmhType extends ChatControllerBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package top.villion.www.jmh_generated;
+public class DiscoveryBenchmark_jmhType extends DiscoveryBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package top.villion.www.jmh_generated;
+public class ExecutionModeBenchmark_jmhType extends ExecutionModeBenchmark_jmhType_B3 {
+}
+
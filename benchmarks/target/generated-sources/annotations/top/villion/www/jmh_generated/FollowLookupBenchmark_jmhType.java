@@ -0,0 +1,4 @@
+package top.villion.www.jmh_generated;
+public class FollowLookupBenchmark_jmhType extends FollowLookupBenchmark_jmhType_B3 {
+}
+
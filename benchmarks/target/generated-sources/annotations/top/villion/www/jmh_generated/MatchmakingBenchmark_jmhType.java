@@ -0,0 +1,4 @@
+package top.villion.www.jmh_generated;
+public class MatchmakingBenchmark_jmhType extends MatchmakingBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package top.villion.www.jmh_generated;
+public class MessageLogBenchmark_jmhType extends MessageLogBenchmark_jmhType_B3 {
+}
+
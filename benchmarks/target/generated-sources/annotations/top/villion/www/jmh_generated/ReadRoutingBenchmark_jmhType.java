@@ -0,0 +1,4 @@
+package top.villion.www.jmh_generated;
+public class ReadRoutingBenchmark_jmhType extends ReadRoutingBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package top.villion.www.jmh_generated;
+public class RoomJoinContentionBenchmark_PerThread_jmhType extends RoomJoinContentionBenchmark_PerThread_jmhType_B3 {
+}
+
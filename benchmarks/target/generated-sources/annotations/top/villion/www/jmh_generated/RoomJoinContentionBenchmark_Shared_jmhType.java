@@ -0,0 +1,4 @@
+package top.villion.www.jmh_generated;
+public class RoomJoinContentionBenchmark_Shared_jmhType extends RoomJoinContentionBenchmark_Shared_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package top.villion.www.jmh_generated;
+public class RoomJoinContentionBenchmark_jmhType extends RoomJoinContentionBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package top.villion.www.jmh_generated;
+public class RoomMessageSerializationBenchmark_jmhType extends RoomMessageSerializationBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package top.villion.www.jmh_generated;
+public class RoomSearchBenchmark_jmhType extends RoomSearchBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,77 @@
+package top.villion.www;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * 业务计数器：在启动时注册好，热路径上只做自增，不按次查找或创建 Meter
+ */
+@Component
+public class AppMetrics {
+
+    static final String SCOPE_SESSION = "session";
+    static final String SCOPE_DESTINATION = "destination";
+
+    // 连接路由：primary=写或无事务，replica=只读，sticky=只读但处于读己之写窗口内而走主库
+    static final String ROUTE_PRIMARY = "primary";
+    static final String ROUTE_REPLICA = "replica";
+    static final String ROUTE_STICKY = "sticky";
+
+    private final Counter roomFullRejections;
+    private final Counter sessionRateLimited;
+    private final Counter destinationRateLimited;
+    private final Counter slowConsumersClosed;
+    private final Counter routedPrimary;
+    private final Counter routedReplica;
+    private final Counter routedSticky;
+
+    public AppMetrics(MeterRegistry registry) {
+        this.roomFullRejections = Counter.builder("room.join.rejected")
+                .description("因房间已满被拒绝的加入请求")
+                .tag("reason", "full")
+                .register(registry);
+        this.sessionRateLimited = rateLimitCounter(registry, SCOPE_SESSION);
+        this.destinationRateLimited = rateLimitCounter(registry, SCOPE_DESTINATION);
+        this.slowConsumersClosed = Counter.builder("stomp.outbound.slow.consumers")
+                .description("发送缓冲区超限或发送超时而被断开的会话")
+                .register(registry);
+        this.routedPrimary = routeCounter(registry, ROUTE_PRIMARY);
+        this.routedReplica = routeCounter(registry, ROUTE_REPLICA);
+        this.routedSticky = routeCounter(registry, ROUTE_STICKY);
+    }
+
+    public void roomFull() {
+        roomFullRejections.increment();
+    }
+
+    public void rateLimited(String scope) {
+        (SCOPE_SESSION.equals(scope) ? sessionRateLimited : destinationRateLimited).increment();
+    }
+
+    public void slowConsumerClosed() {
+        slowConsumersClosed.increment();
+    }
+
+    public void dbRouted(String route) {
+        switch (route) {
+            case ROUTE_REPLICA -> routedReplica.increment();
+            case ROUTE_STICKY -> routedSticky.increment();
+            default -> routedPrimary.increment();
+        }
+    }
+
+    private static Counter rateLimitCounter(MeterRegistry registry, String scope) {
+        return Counter.builder("stomp.inbound.rate.limited")
+                .description("被限流丢弃的入站帧")
+                .tag("scope", scope)
+                .register(registry);
+    }
+
+    private static Counter routeCounter(MeterRegistry registry, String route) {
+        return Counter.builder("db.connection.route")
+                .description("读写分离开启时的物理连接路由")
+                .tag("route", route)
+                .register(registry);
+    }
+}
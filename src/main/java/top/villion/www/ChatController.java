@@ -1,110 +1,211 @@
 package top.villion.www;
 
+import lombok.extern.slf4j.Slf4j;
+
 import org.springframework.messaging.handler.annotation.MessageMapping;
-import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Controller;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.security.Principal;
+import java.util.List;
 
 /**
  * 聊天控制器：处理实时消息和用户匹配，确保无依赖错误
  */
+@Slf4j
 @Controller
 public class ChatController {
 
+    // 匹配结果的用户目的地，客户端订阅 /user/queue/match
+    static final String MATCH_QUEUE = "/queue/match";
+
     // 依赖注入（必须确保这些Bean在项目中已定义）
     private final SimpMessagingTemplate messagingTemplate;
-    private final RoomService roomService;
-    private final UserRepository userRepository;
-
-    // 匹配队列（线程安全）
-    private final ConcurrentLinkedQueue<Long> matchQueue = new ConcurrentLinkedQueue<>();
+    private final TempRoomService tempRoomService;
+    private final TempRoomRegistry tempRoomRegistry;
+    private final UserProfileCache userProfileCache;
+    private final MatchmakingEngine matchmakingEngine;
+    private final RoomSubscriptionRegistry roomSubscriptionRegistry;
+    private final RoomMessageCoalescer roomMessageCoalescer;
+    private final CompactRoomPublisher compactRoomPublisher;
+    private final RoomHistory roomHistory;
+    private final ReadMarkers readMarkers;
+    private final DirectMessageService directMessageService;
+    private final MatchSubscriptions matchSubscriptions;
 
     // 构造器注入（Spring会自动装配）
     public ChatController(SimpMessagingTemplate messagingTemplate,
-                          RoomService roomService,
-                          UserRepository userRepository) {
+                          TempRoomService tempRoomService,
+                          TempRoomRegistry tempRoomRegistry,
+                          UserProfileCache userProfileCache,
+                          MatchmakingEngine matchmakingEngine,
+                          RoomSubscriptionRegistry roomSubscriptionRegistry,
+                          RoomMessageCoalescer roomMessageCoalescer,
+                          CompactRoomPublisher compactRoomPublisher,
+                          RoomHistory roomHistory,
+                          ReadMarkers readMarkers,
+                          DirectMessageService directMessageService,
+                          MatchSubscriptions matchSubscriptions) {
         this.messagingTemplate = messagingTemplate;
-        this.roomService = roomService;
-        this.userRepository = userRepository;
+        this.tempRoomService = tempRoomService;
+        this.tempRoomRegistry = tempRoomRegistry;
+        this.userProfileCache = userProfileCache;
+        this.matchmakingEngine = matchmakingEngine;
+        this.roomSubscriptionRegistry = roomSubscriptionRegistry;
+        this.roomMessageCoalescer = roomMessageCoalescer;
+        this.compactRoomPublisher = compactRoomPublisher;
+        this.roomHistory = roomHistory;
+        this.readMarkers = readMarkers;
+        this.directMessageService = directMessageService;
+        this.matchSubscriptions = matchSubscriptions;
     }
 
     /**
      * 处理房间消息（群聊）
      * 前端通过 /app/roomMessage 发送消息
-     * 所有订阅 /topic/rooms 的客户端会收到消息
+     * 只有订阅了 /topic/rooms/{roomId} 的房间成员会收到消息；开启批量接收的成员从 /batch 目的地按批收到
+     * 每条消息带房间内序号 seq，并保存在最近消息缓冲区（RoomHistory）中，订阅时补发
+     * 发送者以会话身份为准，消息体中的 senderId 会被覆盖
      */
     @MessageMapping("/roomMessage")
-    @SendTo("/topic/rooms")
-    public RoomMessage handleRoomMessage(RoomMessage message) {
+    public void handleRoomMessage(RoomMessage message, Principal principal) {
+        Long senderId = UserPrincipal.userIdOf(principal);
+        if (senderId == null) {
+            throw new IllegalArgumentException("未登录，无法发送消息");
+        }
+        message.setSenderId(senderId);
         // 简单校验（避免空消息）
         if (message.getContent() == null || message.getContent().trim().isEmpty()) {
             throw new IllegalArgumentException("消息内容不能为空");
         }
-        return message;
+        if (message.getRoomId() == null) {
+            throw new IllegalArgumentException("房间ID不能为空");
+        }
+        if (!roomSubscriptionRegistry.isMember(message.getRoomId(), senderId)) {
+            throw new IllegalArgumentException("不是房间成员，无法发送消息");
+        }
+        if (TempRoomRegistry.isTempRoom(message.getRoomId())) {
+            tempRoomRegistry.touch(message.getRoomId());
+        }
+        message.setTimestamp(System.currentTimeMillis());
+        long seq = roomHistory.append(message);
+        // 自己发的消息不算未读
+        readMarkers.markRead(senderId, message.getRoomId(), seq);
+        messagingTemplate.convertAndSend(RoomSubscriptionRegistry.destination(message.getRoomId()), message);
+        compactRoomPublisher.publish(RoomFeed.COMPACT, message.getRoomId(), List.of(message));
+        roomMessageCoalescer.offer(message);
+    }
+
+    /**
+     * 一对一私信：前端通过 /app/dm 发送 {recipient: 对方用户ID, content}，对方从 /user/queue/dm 接收
+     * 发送者以会话身份为准（无身份的会话不能发送），消息体中的 senderId 忽略；不建房间、不写库，对方离线时进入收件箱（见 DirectMessageService）
+     */
+    @MessageMapping("/dm")
+    public void handleDirectMessage(ChatMessage message, Principal principal) {
+        Long senderId = UserPrincipal.userIdOf(principal);
+        if (senderId == null) {
+            throw new IllegalArgumentException("未登录，无法发送私信");
+        }
+        directMessageService.send(senderId, message);
+    }
+
+    /**
+     * 已读回执：前端通过 /app/read 发送 {roomId, seq}，表示已读到该序号；用户以会话身份为准
+     * 同一房间的回执合并后推送到 /topic/rooms/{roomId}/receipts（见 ReadMarkers）
+     */
+    @MessageMapping("/read")
+    public void handleRead(ReadReceipt receipt, Principal principal) {
+        Long userId = UserPrincipal.userIdOf(principal);
+        if (userId == null) {
+            throw new IllegalArgumentException("未登录，无法标记已读");
+        }
+        if (receipt.getRoomId() == null || receipt.getSeq() == null) {
+            throw new IllegalArgumentException("房间ID和消息序号不能为空");
+        }
+        if (!roomSubscriptionRegistry.isMember(receipt.getRoomId(), userId)) {
+            throw new IllegalArgumentException("不是房间成员");
+        }
+        readMarkers.markRead(userId, receipt.getRoomId(), receipt.getSeq());
     }
 
     /**
      * 处理随机匹配请求
-     * 前端通过 /app/randomMatch 发送请求
+     * 前端通过 /app/randomMatch 发送请求，只负责入队，撮合由 matchTick 批量完成
      */
     @MessageMapping("/randomMatch")
-    public void handleRandomMatch(MatchRequest request) {
-        // 校验用户ID
-        if (request.getUserId() == null) {
-            throw new IllegalArgumentException("用户ID不能为空");
+    public void handleRandomMatch(MatchRequest request, Principal principal) {
+        // 以会话身份为准，不信任请求体
+        Long userId = UserPrincipal.userIdOf(principal);
+        if (userId == null) {
+            throw new IllegalArgumentException("未登录，无法匹配");
         }
 
-        Long currentUserId = request.getUserId();
-        Long matchedUserId = matchQueue.poll(); // 从队列取一个等待匹配的用户
-
-        if (matchedUserId != null && !matchedUserId.equals(currentUserId)) {
-            // 匹配成功：创建临时房间
-            Room tempRoom = createTempRoom(currentUserId);
-            // 让双方加入房间
-            roomService.joinRoom(tempRoom.getId(), currentUserId);
-            roomService.joinRoom(tempRoom.getId(), matchedUserId);
-            // 发送匹配结果给双方
-            sendMatchResult(currentUserId, matchedUserId, tempRoom.getId());
-            sendMatchResult(matchedUserId, currentUserId, tempRoom.getId());
-        } else {
-            // 没匹配到，加入等待队列
-            if (!matchQueue.contains(currentUserId)) {
-                matchQueue.add(currentUserId);
-            }
+        UserProfile user = userProfileCache.get(userId)
+                .orElseThrow(() -> new RuntimeException("用户不存在"));
+        matchmakingEngine.enqueue(user.id(), user.gender(), user.age(), user.region(),
+                request.getPreferredGender());
+    }
+
+    /**
+     * 取消随机匹配
+     * 前端通过 /app/cancelMatch 发送请求
+     */
+    @MessageMapping("/cancelMatch")
+    public void handleCancelMatch(Principal principal) {
+        Long userId = UserPrincipal.userIdOf(principal);
+        if (userId == null) {
+            throw new IllegalArgumentException("未登录，无法取消匹配");
         }
+        matchmakingEngine.cancel(userId);
     }
 
-    // 创建临时房间
-    private Room createTempRoom(Long creatorId) {
-        Room room = new Room();
-        room.setName("临时聊天-" + System.currentTimeMillis());
-        room.setCreatedBy(creatorId);
-        room.setMaxCapacity(2); // 临时房间最多2人
-        return roomService.createRoom(room, creatorId);
+    /**
+     * 定时批量撮合：由单个调度线程执行
+     */
+    @Scheduled(fixedDelayString = "${match.tick-interval-ms:50}")
+    public void matchTick() {
+        matchmakingEngine.tick(this::onMatched);
     }
 
-    // 发送匹配结果给用户
+    // 匹配成功：创建内存中的临时房间（不写库）并通知双方
+    private void onMatched(Long userId, Long matchedUserId) {
+        try {
+            Long tempRoomId = tempRoomService.create(userId, matchedUserId);
+            sendMatchResult(userId, matchedUserId, tempRoomId);
+            sendMatchResult(matchedUserId, userId, tempRoomId);
+        } catch (RuntimeException e) {
+            // 单对失败不影响本轮其他撮合
+            log.warn("匹配结果处理失败: {} <-> {}", userId, matchedUserId, e);
+        }
+    }
+
+    // 发送匹配结果给用户：只按用户实际订阅的编码发送（同一用户的不同会话可能分别订阅了两种），没有订阅时不发送
     private void sendMatchResult(Long receiverId, Long matchedUserId, Long roomId) {
         // 查询匹配到的用户信息
-        User matchedUser = userRepository.findById(matchedUserId).orElse(null);
+        UserProfile matchedUser = userProfileCache.get(matchedUserId).orElse(null);
         if (matchedUser == null) {
             return;
         }
 
         // 构造匹配结果
         MatchResult result = new MatchResult();
-        result.setMatchedUserId(matchedUser.getId());
-        result.setMatchedUsername(matchedUser.getUsername());
-        result.setMatchedAvatarUrl(matchedUser.getAvatarUrl());
+        result.setMatchedUserId(matchedUser.id());
+        result.setMatchedUsername(matchedUser.username());
+        result.setMatchedAvatarUrl(matchedUser.avatarUrl());
         result.setTempRoomId(roomId);
 
         // 发送到用户的专属通道
-        messagingTemplate.convertAndSendToUser(
-                receiverId.toString(),
-                "/queue/match",
-                result
-        );
+        if (matchSubscriptions.hasJson(receiverId)) {
+            messagingTemplate.convertAndSendToUser(
+                    receiverId.toString(),
+                    MATCH_QUEUE,
+                    result
+            );
+        }
+        if (matchSubscriptions.hasCompact(receiverId)) {
+            messagingTemplate.convertAndSendToUser(receiverId.toString(), MATCH_QUEUE + CompactCodec.DESTINATION_SUFFIX,
+                    result, CompactRoomPublisher.COMPACT_HEADERS);
+        }
     }
 }
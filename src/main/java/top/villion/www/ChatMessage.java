@@ -5,6 +5,9 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import java.util.Date;
 
+/**
+ * 一对一私信（/app/dm）：recipient 为接收者用户ID，id 由服务端分配，用于客户端去重
+ */
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,53 @@
+package top.villion.www;
+
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 客户端能力协商：CONNECT 帧中的 x-capabilities 头（逗号分隔），保存在会话属性中供后续帧读取
+ *
+ * room-batch  房间消息按批接收（RoomMessageCoalescer）
+ * compact     使用紧凑编码（CompactCodec）
+ */
+final class ClientCapabilities {
+
+    static final String HEADER = "x-capabilities";
+    static final String ROOM_BATCH = "room-batch";
+    static final String COMPACT = "compact";
+
+    private static final String SESSION_ATTRIBUTE = ClientCapabilities.class.getName();
+
+    private ClientCapabilities() {
+    }
+
+    static void record(StompHeaderAccessor connect) {
+        List<String> values = connect.getNativeHeader(HEADER);
+        Map<String, Object> attributes = connect.getSessionAttributes();
+        if (values == null || attributes == null) {
+            return;
+        }
+        Set<String> capabilities = new HashSet<>();
+        for (String value : values) {
+            for (String capability : value.split(",")) {
+                if (!capability.isBlank()) {
+                    capabilities.add(capability.trim());
+                }
+            }
+        }
+        attributes.put(SESSION_ATTRIBUTE, capabilities);
+    }
+
+    @SuppressWarnings("unchecked")
+    static boolean has(StompHeaderAccessor accessor, String capability) {
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (attributes == null) {
+            return false;
+        }
+        Set<String> capabilities = (Set<String>) attributes.get(SESSION_ATTRIBUTE);
+        return capabilities != null && capabilities.contains(capability);
+    }
+}
@@ -0,0 +1,239 @@
+package top.villion.www;
+
+import org.springframework.util.MimeType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 紧凑编码（application/x-dating-compact）
+ *
+ * SockJS 只能传文本，且会对帧内容做 JSON 转义，因此编码结果全部是可打印 ASCII（不含 " 和 \）外加原样的 UTF-8 字符串：
+ * 整数按 5 位一组从低到高输出，中间组用 ']'..'|'，最后一组用 '#'..'B'；
+ * 字符串为 (UTF-8 字节数 + 1) 加原始字节，0 表示 null；可为空的 ID 编码为 (zigzag(值) + 1)，0 表示 null。
+ *
+ * 房间帧：'R' roomId 资料数 {userId username avatarUrl}* 消息数 {senderId 时间差 序号差 content}*
+ *   时间为 epoch 毫秒，序号为房间内消息序号（0 表示没有），都记录与上一条的差值（zigzag），第一条相对 0。
+ * 匹配结果：'M' matchedUserId matchedUsername matchedAvatarUrl tempRoomId
+ */
+final class CompactCodec {
+
+    static final MimeType MIME_TYPE = new MimeType("application", "x-dating-compact");
+    static final String DESTINATION_SUFFIX = "/compact";
+
+    static final byte ROOM_FRAME = 'R';
+    static final byte MATCH_FRAME = 'M';
+
+    private static final int FINAL_BASE = 0x23;        // '#'..'B'
+    private static final int CONTINUATION_BASE = 0x5D; // ']'..'|'
+    private static final int GROUP_BITS = 5;
+    private static final int GROUP_MASK = (1 << GROUP_BITS) - 1;
+
+    private CompactCodec() {
+    }
+
+    static byte[] encodeRoomFrame(Long roomId, List<UserProfile> dictionary, List<RoomMessage> messages) {
+        Writer out = new Writer(32 + messages.size() * 48);
+        out.writeByte(ROOM_FRAME);
+        out.writeNullable(roomId);
+        out.writeVarLong(dictionary.size());
+        for (UserProfile profile : dictionary) {
+            out.writeNullable(profile.id());
+            out.writeString(profile.username());
+            out.writeString(profile.avatarUrl());
+        }
+        out.writeVarLong(messages.size());
+        long previous = 0;
+        long previousSeq = 0;
+        for (RoomMessage message : messages) {
+            long timestamp = message.getTimestamp() == null ? 0 : message.getTimestamp();
+            long seq = message.getSeq() == null ? 0 : message.getSeq();
+            out.writeNullable(message.getSenderId());
+            out.writeVarLong(zigzag(timestamp - previous));
+            out.writeVarLong(zigzag(seq - previousSeq));
+            out.writeString(message.getContent());
+            previous = timestamp;
+            previousSeq = seq;
+        }
+        return out.toByteArray();
+    }
+
+    static CompactRoomFrame decodeRoomFrame(byte[] data) {
+        Reader in = new Reader(data);
+        in.expect(ROOM_FRAME);
+        Long roomId = in.readNullable();
+
+        int dictionarySize = in.readCount();
+        List<UserProfile> dictionary = new ArrayList<>(dictionarySize);
+        Map<Long, UserProfile> byId = new HashMap<>();
+        for (int i = 0; i < dictionarySize; i++) {
+            UserProfile profile = new UserProfile(in.readNullable(), in.readString(), in.readString(), null, null, null);
+            dictionary.add(profile);
+            byId.put(profile.id(), profile);
+        }
+
+        int count = in.readCount();
+        List<RoomMessage> messages = new ArrayList<>(count);
+        long timestamp = 0;
+        long seq = 0;
+        for (int i = 0; i < count; i++) {
+            RoomMessage message = new RoomMessage();
+            message.setRoomId(roomId);
+            message.setSenderId(in.readNullable());
+            timestamp += unzigzag(in.readVarLong());
+            message.setTimestamp(timestamp);
+            seq += unzigzag(in.readVarLong());
+            message.setSeq(seq == 0 ? null : seq);
+            message.setContent(in.readString());
+            UserProfile sender = byId.get(message.getSenderId());
+            if (sender != null) {
+                message.setSenderName(sender.username());
+                message.setSenderAvatar(sender.avatarUrl());
+            }
+            messages.add(message);
+        }
+        return new CompactRoomFrame(roomId, dictionary, messages);
+    }
+
+    static byte[] encodeMatchResult(MatchResult result) {
+        Writer out = new Writer(64);
+        out.writeByte(MATCH_FRAME);
+        out.writeNullable(result.getMatchedUserId());
+        out.writeString(result.getMatchedUsername());
+        out.writeString(result.getMatchedAvatarUrl());
+        out.writeNullable(result.getTempRoomId());
+        return out.toByteArray();
+    }
+
+    static MatchResult decodeMatchResult(byte[] data) {
+        Reader in = new Reader(data);
+        in.expect(MATCH_FRAME);
+        MatchResult result = new MatchResult();
+        result.setMatchedUserId(in.readNullable());
+        result.setMatchedUsername(in.readString());
+        result.setMatchedAvatarUrl(in.readString());
+        result.setTempRoomId(in.readNullable());
+        return result;
+    }
+
+    private static long zigzag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    private static long unzigzag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static final class Writer {
+        private byte[] buf;
+        private int len;
+
+        Writer(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[len++] = (byte) b;
+        }
+
+        void writeVarLong(long v) {
+            ensure(13);
+            while ((v >>> GROUP_BITS) != 0) {
+                buf[len++] = (byte) (CONTINUATION_BASE + (v & GROUP_MASK));
+                v >>>= GROUP_BITS;
+            }
+            buf[len++] = (byte) (FINAL_BASE + v);
+        }
+
+        void writeNullable(Long v) {
+            writeVarLong(v == null ? 0 : zigzag(v) + 1);
+        }
+
+        void writeString(String s) {
+            if (s == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, len, bytes.length);
+            len += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, len);
+        }
+
+        private void ensure(int n) {
+            if (len + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + n));
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buf;
+        private int pos;
+
+        Reader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        void expect(byte type) {
+            if (pos >= buf.length || buf[pos++] != type) {
+                throw new IllegalArgumentException("紧凑编码帧类型错误");
+            }
+        }
+
+        long readVarLong() {
+            long v = 0;
+            for (int shift = 0; shift < Long.SIZE; shift += GROUP_BITS) {
+                if (pos >= buf.length) {
+                    break;
+                }
+                int b = buf[pos++] & 0xFF;
+                if (b >= CONTINUATION_BASE && b <= CONTINUATION_BASE + GROUP_MASK) {
+                    v |= (long) (b - CONTINUATION_BASE) << shift;
+                } else if (b >= FINAL_BASE && b <= FINAL_BASE + GROUP_MASK) {
+                    return v | (long) (b - FINAL_BASE) << shift;
+                } else {
+                    break;
+                }
+            }
+            throw new IllegalArgumentException("紧凑编码格式错误");
+        }
+
+        Long readNullable() {
+            long v = readVarLong();
+            return v == 0 ? null : unzigzag(v - 1);
+        }
+
+        int readCount() {
+            long v = readVarLong();
+            if (v > buf.length - pos) {
+                throw new IllegalArgumentException("紧凑编码格式错误");
+            }
+            return (int) v;
+        }
+
+        String readString() {
+            long v = readVarLong();
+            if (v == 0) {
+                return null;
+            }
+            int n = (int) (v - 1);
+            if (n < 0 || n > buf.length - pos) {
+                throw new IllegalArgumentException("紧凑编码格式错误");
+            }
+            String s = new String(buf, pos, n, StandardCharsets.UTF_8);
+            pos += n;
+            return s;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package top.villion.www;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 紧凑编码的消息转换器，与默认的 JSON 转换器并存
+ *
+ * 只处理 content-type 为 application/x-dating-compact 的消息（严格匹配），其余交给 JSON 转换器
+ */
+public class CompactMessageConverter extends AbstractMessageConverter {
+
+    public CompactMessageConverter() {
+        super(CompactCodec.MIME_TYPE);
+        setStrictContentTypeMatch(true);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == CompactRoomFrame.class || clazz == RoomMessage.class || clazz == MatchResult.class;
+    }
+
+    @Override
+    protected Object convertFromInternal(Message<?> message, Class<?> targetClass, Object conversionHint) {
+        Object payload = message.getPayload();
+        byte[] data = payload instanceof byte[] bytes ? bytes : payload.toString().getBytes(StandardCharsets.UTF_8);
+        if (targetClass == MatchResult.class) {
+            return CompactCodec.decodeMatchResult(data);
+        }
+        CompactRoomFrame frame = CompactCodec.decodeRoomFrame(data);
+        if (targetClass == CompactRoomFrame.class) {
+            return frame;
+        }
+        return frame.messages().isEmpty() ? null : frame.messages().get(0);
+    }
+
+    @Override
+    protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+        if (payload instanceof CompactRoomFrame frame) {
+            return CompactCodec.encodeRoomFrame(frame.roomId(), frame.dictionary(), frame.messages());
+        }
+        if (payload instanceof RoomMessage message) {
+            return CompactCodec.encodeRoomFrame(message.getRoomId(), List.of(), List.of(message));
+        }
+        return CompactCodec.encodeMatchResult((MatchResult) payload);
+    }
+}
@@ -0,0 +1,13 @@
+package top.villion.www;
+
+import java.util.List;
+
+/**
+ * 紧凑编码的房间帧：dictionary 为本帧新公布的发送者资料，messages 中只带 senderId
+ *
+ * 没有消息、只有资料的帧即"字典帧"，在订阅紧凑目的地时下发当前房间全部成员
+ */
+public record CompactRoomFrame(Long roomId,
+                               List<UserProfile> dictionary,
+                               List<RoomMessage> messages) {
+}
@@ -0,0 +1,91 @@
+package top.villion.www;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 紧凑编码的房间消息发布：消息只带 senderId，发送者资料通过字典下发
+ *
+ * 订阅紧凑目的地时先收到一帧包含当前全部成员的字典（连同补发的历史消息，见 RoomHistoryReplayer）；
+ * 之后某个发送者第一次出现（或资料变化）时，资料随该帧一起公布。并发发送时客户端偶尔可能先收到消息后收到资料，遇到未知 senderId 可调用 GET /users/{id} 补齐。
+ */
+@Component
+public class CompactRoomPublisher {
+
+    static final Map<String, Object> COMPACT_HEADERS = Map.of(MessageHeaders.CONTENT_TYPE, CompactCodec.MIME_TYPE);
+
+    private final boolean enabled;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final RoomSubscriptionRegistry roomSubscriptionRegistry;
+    private final UserProfileCache userProfileCache;
+
+    // 目的地 -> 已在该目的地公布过的发送者资料
+    private final ConcurrentHashMap<String, ConcurrentHashMap<Long, UserProfile>> announced = new ConcurrentHashMap<>();
+
+    public CompactRoomPublisher(@Value("${app.compact.enabled:true}") boolean enabled,
+                                @Lazy SimpMessagingTemplate messagingTemplate,
+                                RoomSubscriptionRegistry roomSubscriptionRegistry,
+                                UserProfileCache userProfileCache) {
+        this.enabled = enabled;
+        this.messagingTemplate = messagingTemplate;
+        this.roomSubscriptionRegistry = roomSubscriptionRegistry;
+        this.userProfileCache = userProfileCache;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 向房间的紧凑目的地发送一条或一批消息；没有该形式的订阅者时直接返回
+     */
+    public void publish(RoomFeed feed, Long roomId, List<RoomMessage> messages) {
+        if (!enabled || !roomSubscriptionRegistry.hasSubscribers(roomId, feed)) {
+            return;
+        }
+        String destination = feed.destination(roomId);
+        ConcurrentHashMap<Long, UserProfile> known = announced.computeIfAbsent(destination, d -> new ConcurrentHashMap<>());
+        List<UserProfile> fresh = List.of();
+        for (RoomMessage message : messages) {
+            UserProfile profile = userProfileCache.get(message.getSenderId()).orElse(null);
+            if (profile != null && !Objects.equals(known.put(profile.id(), profile), profile)) {
+                if (fresh.isEmpty()) {
+                    fresh = new ArrayList<>();
+                }
+                fresh.add(profile);
+            }
+        }
+        messagingTemplate.convertAndSend(destination, new CompactRoomFrame(roomId, fresh, messages), COMPACT_HEADERS);
+    }
+
+    /**
+     * 刚订阅紧凑目的地时单独下发的帧：当前全部成员（以及历史消息中已离开的发送者）的资料，加上补发的历史消息
+     */
+    CompactRoomFrame snapshot(Long roomId, List<RoomMessage> history) {
+        Map<Long, UserProfile> profiles = new LinkedHashMap<>();
+        for (Long memberId : roomSubscriptionRegistry.memberIds(roomId)) {
+            userProfileCache.get(memberId).ifPresent(profile -> profiles.put(memberId, profile));
+        }
+        for (RoomMessage message : history) {
+            if (!profiles.containsKey(message.getSenderId())) {
+                userProfileCache.get(message.getSenderId()).ifPresent(profile -> profiles.put(profile.id(), profile));
+            }
+        }
+        return new CompactRoomFrame(roomId, new ArrayList<>(profiles.values()), history);
+    }
+
+    public void onRoomDeleted(Long roomId) {
+        announced.remove(RoomFeed.COMPACT.destination(roomId));
+        announced.remove(RoomFeed.COMPACT_BATCH.destination(roomId));
+    }
+}
@@ -0,0 +1,251 @@
+package top.villion.www;
+
+import java.util.Arrays;
+
+/**
+ * 压缩位图（Roaring 思路）：非负 int 按高 16 位分块，每块按密度选择容器
+ *
+ * 稀疏块为有序 char[]（数组容器，最多 ARRAY_MAX 个），稠密块为 1024 个 long 的位图（8KB）；
+ * 集合运算由调用方按块进行（orChunk / andNotChunk）。非线程安全，由调用方加锁（见 UserAttributeIndex）。
+ */
+final class CompressedBitmap {
+
+    // 数组容器上限：低于 Roaring 常用的 4096（内存最省），因为查询按块合并时位图容器只需 1024 次按字或，
+    // 数组容器要逐个置位；几千个元素的块改用位图，合并快约 10 倍，每块内存最多多用 6KB
+    private static final int ARRAY_MAX = 1024;
+    private static final int WORDS = 1024;
+
+    // 块的高 16 位（升序），containers[i] 为 char[] 或 long[]，cards[i] 为块内元素数
+    private char[] keys;
+    private Object[] containers;
+    private int[] cards;
+    private int size;
+    private long cardinality;
+
+    CompressedBitmap() {
+        this(4);
+    }
+
+    private CompressedBitmap(int capacity) {
+        keys = new char[capacity];
+        containers = new Object[capacity];
+        cards = new int[capacity];
+    }
+
+    /** 由有序 long[] 构建，超出 int 范围的值忽略 */
+    static CompressedBitmap of(long[] sorted) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (long value : sorted) {
+            if (value >= 0 && value <= Integer.MAX_VALUE) {
+                bitmap.add((int) value);
+            }
+        }
+        return bitmap;
+    }
+
+    long cardinality() {
+        return cardinality;
+    }
+
+    boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    boolean contains(int value) {
+        int i = indexOf((char) (value >>> 16));
+        if (i < 0) {
+            return false;
+        }
+        char low = (char) value;
+        return containers[i] instanceof long[] words
+                ? (words[low >>> 6] & (1L << low)) != 0
+                : Arrays.binarySearch((char[]) containers[i], 0, cards[i], low) >= 0;
+    }
+
+    /** @return false 表示已存在 */
+    boolean add(int value) {
+        char high = (char) (value >>> 16);
+        char low = (char) value;
+        int i = indexOf(high);
+        if (i < 0) {
+            insertContainer(-i - 1, high, new char[]{low}, 1);
+            cardinality++;
+            return true;
+        }
+        if (containers[i] instanceof long[] words) {
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) != 0) {
+                return false;
+            }
+            words[low >>> 6] |= bit;
+        } else {
+            char[] values = (char[]) containers[i];
+            int card = cards[i];
+            int pos = Arrays.binarySearch(values, 0, card, low);
+            if (pos >= 0) {
+                return false;
+            }
+            if (card == ARRAY_MAX) {
+                long[] words = toWords(values, card);
+                words[low >>> 6] |= 1L << low;
+                containers[i] = words;
+            } else {
+                pos = -pos - 1;
+                if (card == values.length) {
+                    values = Arrays.copyOf(values, Math.min(ARRAY_MAX, card * 2));
+                    containers[i] = values;
+                }
+                System.arraycopy(values, pos, values, pos + 1, card - pos);
+                values[pos] = low;
+            }
+        }
+        cards[i]++;
+        cardinality++;
+        return true;
+    }
+
+    /** @return false 表示不存在 */
+    boolean remove(int value) {
+        int i = indexOf((char) (value >>> 16));
+        if (i < 0) {
+            return false;
+        }
+        char low = (char) value;
+        if (containers[i] instanceof long[] words) {
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0) {
+                return false;
+            }
+            words[low >>> 6] &= ~bit;
+            if (cards[i] - 1 == ARRAY_MAX) {
+                containers[i] = toArray(words, ARRAY_MAX);
+            }
+        } else {
+            char[] values = (char[]) containers[i];
+            int pos = Arrays.binarySearch(values, 0, cards[i], low);
+            if (pos < 0) {
+                return false;
+            }
+            System.arraycopy(values, pos + 1, values, pos, cards[i] - pos - 1);
+        }
+        cardinality--;
+        if (--cards[i] == 0) {
+            removeContainer(i);
+        }
+        return true;
+    }
+
+    // ------------------------------
+    // 按块访问：调用方逐块把多个位图合并到 1024 个 long 的缓冲区中求值，不生成中间位图（见 UserAttributeIndex）
+    // ------------------------------
+
+    int chunkCount() {
+        return size;
+    }
+
+    /** 第 i 块的高 16 位 */
+    int chunkKey(int i) {
+        return keys[i];
+    }
+
+    /** 第一个高 16 位 >= high 的块的下标，没有时返回 chunkCount() */
+    int firstChunkFrom(int high) {
+        return high > Character.MAX_VALUE ? size : lowerBound((char) high);
+    }
+
+    /**
+     * 把高 16 位为 high 的块并入 words
+     * @return false 表示没有该块
+     */
+    boolean orChunk(int high, long[] words) {
+        int i = high > Character.MAX_VALUE ? -1 : indexOf((char) high);
+        if (i < 0) {
+            return false;
+        }
+        if (containers[i] instanceof char[] values) {
+            for (int p = 0, card = cards[i]; p < card; p++) {
+                words[values[p] >>> 6] |= 1L << values[p];
+            }
+        } else {
+            long[] other = (long[]) containers[i];
+            for (int w = 0; w < WORDS; w++) {
+                words[w] |= other[w];
+            }
+        }
+        return true;
+    }
+
+    /** 从 words 中去掉高 16 位为 high 的块的元素 */
+    void andNotChunk(int high, long[] words) {
+        int i = high > Character.MAX_VALUE ? -1 : indexOf((char) high);
+        if (i < 0) {
+            return;
+        }
+        if (containers[i] instanceof char[] values) {
+            for (int p = 0, card = cards[i]; p < card; p++) {
+                words[values[p] >>> 6] &= ~(1L << values[p]);
+            }
+        } else {
+            long[] other = (long[]) containers[i];
+            for (int w = 0; w < WORDS; w++) {
+                words[w] &= ~other[w];
+            }
+        }
+    }
+
+    // ------------------------------
+    // 内部
+    // ------------------------------
+
+    private int indexOf(char high) {
+        return Arrays.binarySearch(keys, 0, size, high);
+    }
+
+    // 第一个高 16 位 >= high 的块
+    private int lowerBound(char high) {
+        int i = indexOf(high);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private void insertContainer(int at, char high, Object container, int card) {
+        if (size == keys.length) {
+            int capacity = Math.max(4, size * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+            cards = Arrays.copyOf(cards, capacity);
+        }
+        System.arraycopy(keys, at, keys, at + 1, size - at);
+        System.arraycopy(containers, at, containers, at + 1, size - at);
+        System.arraycopy(cards, at, cards, at + 1, size - at);
+        keys[at] = high;
+        containers[at] = container;
+        cards[at] = card;
+        size++;
+    }
+
+    private void removeContainer(int at) {
+        System.arraycopy(keys, at + 1, keys, at, size - at - 1);
+        System.arraycopy(containers, at + 1, containers, at, size - at - 1);
+        System.arraycopy(cards, at + 1, cards, at, size - at - 1);
+        containers[--size] = null;
+    }
+
+    private static long[] toWords(char[] values, int card) {
+        long[] words = new long[WORDS];
+        for (int p = 0; p < card; p++) {
+            words[values[p] >>> 6] |= 1L << values[p];
+        }
+        return words;
+    }
+
+    private static char[] toArray(long[] words, int card) {
+        char[] values = new char[card];
+        int n = 0;
+        for (int w = 0; w < WORDS; w++) {
+            for (long word = words[w]; word != 0; word &= word - 1) {
+                values[n++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+            }
+        }
+        return values;
+    }
+}
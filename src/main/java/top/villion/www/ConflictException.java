@@ -0,0 +1,10 @@
+package top.villion.www;
+
+/**
+ * 请求与资源当前状态冲突（如容量小于当前人数），返回 409
+ */
+public class ConflictException extends RuntimeException {
+    public ConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,87 @@
+package top.villion.www;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 读写分离（app.datasource.routing.enabled=true 时生效）
+ *
+ * 主库沿用 spring.datasource.*；从库地址为 app.datasource.replica-urls（逗号分隔），
+ * 账号默认与主库相同。所有连接池共用 spring.datasource.hikari.* 配置。
+ * 只读事务（@Transactional(readOnly = true)，包括 Spring Data 仓库的查询方法在未加入写事务时）走从库，
+ * 写事务和无事务的访问走主库；读己之写窗口见 ReadYourWrites。
+ *
+ * 开启 open-in-view 时一个请求共用一个 EntityManager，Hibernate 默认一直持有第一次取得的连接，
+ * 请求里先做只读查询（如 findById）再写时，写事务会沿用从库连接。因此路由开启时改为每个事务结束即归还连接，
+ * 下一个事务重新取连接、重新路由。
+ */
+@Configuration
+@ConditionalOnProperty(name = DataSourceConfig.ROUTING_PROPERTY, havingValue = "true")
+public class DataSourceConfig {
+
+    public static final String ROUTING_PROPERTY = "app.datasource.routing.enabled";
+
+    @Bean(destroyMethod = "close")
+    ReadWriteRoutingDataSource readWriteRoutingDataSource(DataSourceProperties properties,
+                                                          Environment environment,
+                                                          MeterRegistry meterRegistry,
+                                                          ReadYourWrites readYourWrites,
+                                                          AppMetrics appMetrics,
+                                                          @Value("${app.datasource.replica-urls:}") String[] replicaUrls,
+                                                          @Value("${app.datasource.replica-username:${spring.datasource.username:}}") String replicaUsername,
+                                                          @Value("${app.datasource.replica-password:${spring.datasource.password:}}") String replicaPassword) {
+        Binder binder = Binder.get(environment);
+        HikariDataSource primary = pool(binder, meterRegistry, properties.determineUrl(),
+                properties.determineUsername(), properties.determinePassword(), properties, "primary");
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : replicaUrls) {
+            if (!url.isBlank()) {
+                replicas.add(pool(binder, meterRegistry, url.trim(), replicaUsername, replicaPassword, properties,
+                        "replica-" + replicas.size()));
+            }
+        }
+        return new ReadWriteRoutingDataSource(primary, replicas, readYourWrites, appMetrics);
+    }
+
+    @Bean
+    HibernatePropertiesCustomizer connectionPerTransaction() {
+        return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource readWriteRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(readWriteRoutingDataSource);
+    }
+
+    private static HikariDataSource pool(Binder binder, MeterRegistry meterRegistry, String url, String username,
+                                         String password, DataSourceProperties properties, String name) {
+        HikariDataSource pool = new HikariDataSource();
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setJdbcUrl(url);
+        pool.setUsername(username);
+        pool.setPassword(password);
+        pool.setDriverClassName(properties.determineDriverClassName());
+        pool.setPoolName(name);
+        pool.setMetricRegistry(meterRegistry); // hikaricp.* 按 pool 标签区分
+        return pool;
+    }
+}
@@ -2,8 +2,10 @@ package top.villion.www;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class  DatingAppApplication {
     public static void main(String[] args) {
         SpringApplication.run(DatingAppApplication.class, args);
@@ -0,0 +1,182 @@
+package top.villion.www;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一对一私信：不建房间、不写库，对方订阅着 /user/queue/dm 时直接推送（见 DmSubscriptions）
+ *
+ * 对方没有订阅（离线，或在线但还没订阅私信队列）时放入对方的收件箱（每人最多 inbox-capacity 条，满了丢弃最旧的），
+ * 对方重新订阅 /user/queue/dm 后一次性以 JSON 数组推送（见 RoomSubscriptionInterceptor），超过 inbox-ttl 未取走的收件箱整体清理。
+ * 每条私信带进程内唯一的 id：上下线的边界情况下同一条可能既被推送又进入收件箱，客户端按 id 去重。
+ */
+@Slf4j
+@Service
+public class DirectMessageService {
+
+    static final String DM_QUEUE = "/queue/dm";
+    static final String USER_DM_DESTINATION = "/user" + DM_QUEUE;
+
+    private final DmSubscriptions dmSubscriptions;
+    private final UserProfileCache userProfileCache;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final int inboxCapacity;
+    private final long inboxTtlMillis;
+
+    private final ConcurrentHashMap<Long, Inbox> inboxes = new ConcurrentHashMap<>();
+    private final AtomicLong lastId = new AtomicLong(System.currentTimeMillis() * 1000);
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder dropped = new LongAdder();
+
+    public DirectMessageService(DmSubscriptions dmSubscriptions,
+                                UserProfileCache userProfileCache,
+                                @Lazy SimpMessagingTemplate messagingTemplate,
+                                @Value("${app.dm.inbox-capacity:100}") int inboxCapacity,
+                                @Value("${app.dm.inbox-ttl-hours:72}") long inboxTtlHours) {
+        this.dmSubscriptions = dmSubscriptions;
+        this.userProfileCache = userProfileCache;
+        this.messagingTemplate = messagingTemplate;
+        this.inboxCapacity = inboxCapacity;
+        this.inboxTtlMillis = TimeUnit.HOURS.toMillis(inboxTtlHours);
+    }
+
+    /**
+     * 发送私信：recipient 为对方用户ID
+     */
+    public ChatMessage send(Long senderId, ChatMessage message) {
+        if (message.getContent() == null || message.getContent().trim().isEmpty()) {
+            throw new IllegalArgumentException("消息内容不能为空");
+        }
+        Long recipientId = parseUserId(message.getRecipient());
+        if (recipientId == null) {
+            throw new IllegalArgumentException("接收者ID无效");
+        }
+        if (recipientId.equals(senderId)) {
+            throw new IllegalArgumentException("不能给自己发私信");
+        }
+        UserProfile sender = userProfileCache.get(senderId)
+                .orElseThrow(() -> new IllegalArgumentException("用户不存在"));
+        if (!userProfileCache.exists(recipientId)) {
+            throw new IllegalArgumentException("接收者不存在");
+        }
+
+        message.setId(lastId.incrementAndGet());
+        message.setSenderId(senderId);
+        message.setSender(sender.username());
+        message.setRecipient(recipientId.toString());
+        message.setRoomId(null);
+        message.setType(ChatMessage.Type.CHAT);
+        message.setTimestamp(new Date());
+
+        if (dmSubscriptions.isSubscribed(recipientId)) {
+            messagingTemplate.convertAndSendToUser(message.getRecipient(), DM_QUEUE, message);
+            // 推送期间对方刚好取消订阅或断开时也放入收件箱
+            if (dmSubscriptions.isSubscribed(recipientId)) {
+                return message;
+            }
+        }
+        inboxes.computeIfAbsent(recipientId, id -> new Inbox()).offer(message);
+        // 放入期间对方刚好订阅并已取过收件箱时，立即补发
+        if (dmSubscriptions.isSubscribed(recipientId)) {
+            deliverInbox(recipientId);
+        }
+        return message;
+    }
+
+    /**
+     * 把收件箱中的私信以一帧（JSON 数组）推送给用户，收件箱为空时不发送
+     */
+    public void deliverInbox(Long userId) {
+        Inbox inbox = inboxes.remove(userId);
+        if (inbox == null) {
+            return;
+        }
+        List<ChatMessage> messages = inbox.drain();
+        if (!messages.isEmpty()) {
+            messagingTemplate.convertAndSendToUser(userId.toString(), DM_QUEUE, messages);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.dm.inbox-purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        long expireBefore = System.currentTimeMillis() - inboxTtlMillis;
+        int purged = 0;
+        for (var entry : inboxes.entrySet()) {
+            Inbox inbox = entry.getValue();
+            if (inbox.lastOffer < expireBefore && inboxes.remove(entry.getKey(), inbox)) {
+                purged += inbox.drain().size();
+            }
+        }
+        if (purged > 0) {
+            dropped.add(purged);
+            log.info("清理过期私信 {} 条", purged);
+        }
+    }
+
+    // 以下供指标采集使用
+    int pendingCount() {
+        return pending.get();
+    }
+
+    long droppedCount() {
+        return dropped.sum();
+    }
+
+    private static Long parseUserId(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 单个用户的收件箱：有界队列，满了丢弃最旧的；取走后不再接收（retired），新私信会建新的收件箱
+     */
+    private final class Inbox {
+        private final ArrayDeque<ChatMessage> messages = new ArrayDeque<>();
+        private boolean retired;
+        volatile long lastOffer;
+
+        synchronized void offer(ChatMessage message) {
+            if (retired) {
+                // 刚被取走，重新放入新的收件箱
+                inboxes.computeIfAbsent(Long.valueOf(message.getRecipient()), id -> new Inbox()).offer(message);
+                return;
+            }
+            if (messages.size() >= inboxCapacity) {
+                messages.pollFirst();
+                pending.decrementAndGet();
+                dropped.increment();
+            }
+            messages.addLast(message);
+            pending.incrementAndGet();
+            lastOffer = System.currentTimeMillis();
+        }
+
+        synchronized List<ChatMessage> drain() {
+            retired = true;
+            List<ChatMessage> drained = new ArrayList<>(messages);
+            messages.clear();
+            pending.addAndGet(-drained.size());
+            return drained;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package top.villion.www;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 私信订阅登记：记录哪些用户当前订阅着 /user/queue/dm
+ *
+ * 有 STOMP 会话不代表订阅了私信队列（只进了房间、还没订阅或已取消订阅），
+ * DirectMessageService 只在对方确实订阅着时直接推送，否则放入收件箱。
+ * 订阅在 Broker 登记完成后由 RoomSubscriptionInterceptor 登记，会话断开时由 PresenceEventListener 清理。
+ */
+@Component
+public class DmSubscriptions {
+
+    // userId -> 订阅数（同一用户可能有多个会话）
+    private final ConcurrentHashMap<Long, Integer> countsByUser = new ConcurrentHashMap<>();
+    // sessionId -> (subscriptionId -> userId)
+    private final ConcurrentHashMap<String, Map<String, Long>> subscriptionsBySession = new ConcurrentHashMap<>();
+
+    void add(String sessionId, String subscriptionId, Long userId) {
+        Long previous = subscriptionsBySession.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>())
+                .put(subscriptionId, userId);
+        if (previous != null) {
+            decrement(previous);
+        }
+        countsByUser.merge(userId, 1, Integer::sum);
+    }
+
+    void remove(String sessionId, String subscriptionId) {
+        Map<String, Long> subs = subscriptionsBySession.get(sessionId);
+        Long userId = subs != null ? subs.remove(subscriptionId) : null;
+        if (userId != null) {
+            decrement(userId);
+        }
+    }
+
+    void removeSession(String sessionId) {
+        Map<String, Long> subs = subscriptionsBySession.remove(sessionId);
+        if (subs != null) {
+            subs.values().forEach(this::decrement);
+        }
+    }
+
+    boolean isSubscribed(Long userId) {
+        return userId != null && countsByUser.containsKey(userId);
+    }
+
+    // 计数归零的用户移除
+    private void decrement(Long userId) {
+        countsByUser.computeIfPresent(userId, (id, count) -> count <= 1 ? null : count - 1);
+    }
+}
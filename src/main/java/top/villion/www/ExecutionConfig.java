@@ -0,0 +1,38 @@
+package top.villion.www;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+/**
+ * 执行模式配置：app.execution.mode=pooled（默认，有界线程池）| virtual（虚拟线程，需 Java 21+）
+ *
+ * pooled 模式下 Tomcat 线程数由 server.tomcat.threads.* 控制，
+ * STOMP 通道线程池见 WebSocketConfig。
+ */
+@Configuration
+public class ExecutionConfig {
+
+    public static final String MODE_PROPERTY = "app.execution.mode";
+    public static final String POOLED = "pooled";
+    public static final String VIRTUAL = "virtual";
+
+    /**
+     * 虚拟线程模式：每个 HTTP 请求一个虚拟线程，阻塞的 JPA 调用不再占用平台线程
+     */
+    @Bean
+    @ConditionalOnProperty(name = MODE_PROPERTY, havingValue = VIRTUAL)
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        requireVirtualThreads();
+        return protocolHandler -> protocolHandler.setExecutor(new VirtualThreadTaskExecutor("tomcat-"));
+    }
+
+    static void requireVirtualThreads() {
+        if (Runtime.version().feature() < 21) {
+            throw new IllegalStateException("虚拟线程模式需要 Java 21+，当前版本: " + Runtime.version()
+                    + "（使用 -Pjava21 构建并在 Java 21 上运行，或设置 " + MODE_PROPERTY + "=" + POOLED + "）");
+        }
+    }
+}
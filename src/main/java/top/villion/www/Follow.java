@@ -4,13 +4,20 @@ import jakarta.persistence.*;
 import lombok.Data;
 
 @Entity
-@Table(name = "follows")
+@Table(name = "follows",
+        uniqueConstraints = @UniqueConstraint(name = "uk_follows_follower_followee",
+                columnNames = {"follower_id", "followee_id"}),
+        indexes = @Index(name = "idx_follows_followee", columnList = "followee_id"))
 @Data
 public class Follow {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // (follower_id, followee_id) 唯一索引同时覆盖按关注者查询
+    @Column(name = "follower_id", nullable = false)
     private Long followerId;
+
+    @Column(name = "followee_id", nullable = false)
     private Long followeeId;
 }
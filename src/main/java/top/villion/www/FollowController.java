@@ -2,6 +2,7 @@ package top.villion.www;
 
 import org.springframework.web.bind.annotation.*;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/follows")
@@ -26,6 +27,24 @@ public class FollowController {
         return "已取消关注用户 " + targetId;
     }
 
+    @PostMapping("/batch")
+    public List<Long> followBatch(@RequestParam Long userId, @RequestBody List<Long> targetIds) {
+        return followService.followBatch(userId, targetIds);
+    }
+
+    @PostMapping("/batch/unfollow")
+    public List<Long> unfollowBatch(@RequestParam Long userId, @RequestBody List<Long> targetIds) {
+        return followService.unfollowBatch(userId, targetIds);
+    }
+
+    /**
+     * 批量查询关系状态：1=已关注，2=被关注，3=互相关注，0=无关系
+     */
+    @PostMapping("/status")
+    public Map<Long, Integer> getRelationships(@RequestParam Long userId, @RequestBody List<Long> targetIds) {
+        return followService.getRelationships(userId, targetIds);
+    }
+
     @GetMapping("/following")
     public List<User> getFollowing(@RequestParam Long userId) {
         return followService.getFollowing(userId);
@@ -35,4 +54,21 @@ public class FollowController {
     public List<User> getFollowers(@RequestParam Long userId) {
         return followService.getFollowers(userId);
     }
+
+    @GetMapping("/check")
+    public Map<String, Boolean> check(@RequestParam Long userId, @RequestParam Long targetId) {
+        return Map.of(
+                "following", followService.isFollowing(userId, targetId),
+                "followedBy", followService.isFollowing(targetId, userId));
+    }
+
+    @GetMapping("/mutual")
+    public long[] getMutual(@RequestParam Long userId) {
+        return followService.getMutualIds(userId);
+    }
+
+    @GetMapping("/common")
+    public long[] getCommonFollowing(@RequestParam Long userId, @RequestParam Long otherId) {
+        return followService.getCommonFollowingIds(userId, otherId);
+    }
 }
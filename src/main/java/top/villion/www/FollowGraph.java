@@ -0,0 +1,147 @@
+package top.villion.www;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 关注关系图：正反两个方向都以有序 long[] 保存在内存中
+ *
+ * 读操作无锁（读取不可变快照），写操作按用户原子替换数组；
+ * 数据以 follows 表为准，启动时全量加载，之后由 FollowService 在事务提交后按库中已提交的状态同步（sync）。
+ * 返回的数组是内部快照，调用方不得修改。
+ */
+@Component
+public class FollowGraph {
+
+    private static final int LOAD_PAGE_SIZE = 10_000;
+    private static final int SYNC_LOCKS = 64;
+
+    private final FollowRepository followRepository;
+
+    // userId -> 他关注的人
+    private final ConcurrentHashMap<Long, long[]> following = new ConcurrentHashMap<>();
+    // userId -> 关注他的人
+    private final ConcurrentHashMap<Long, long[]> followers = new ConcurrentHashMap<>();
+    // 按关注者分段的同步锁
+    private final Object[] syncLocks = new Object[SYNC_LOCKS];
+
+    public FollowGraph(FollowRepository followRepository) {
+        this.followRepository = followRepository;
+        for (int i = 0; i < SYNC_LOCKS; i++) {
+            syncLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * 按 id 分页全量加载 follows 表
+     */
+    @PostConstruct
+    public void load() {
+        Map<Long, Builder> out = new HashMap<>();
+        Map<Long, Builder> in = new HashMap<>();
+        long lastId = 0;
+        List<Follow> page;
+        do {
+            page = followRepository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.ofSize(LOAD_PAGE_SIZE));
+            for (Follow f : page) {
+                out.computeIfAbsent(f.getFollowerId(), k -> new Builder()).add(f.getFolloweeId());
+                in.computeIfAbsent(f.getFolloweeId(), k -> new Builder()).add(f.getFollowerId());
+                lastId = f.getId();
+            }
+        } while (page.size() == LOAD_PAGE_SIZE);
+
+        following.clear();
+        followers.clear();
+        out.forEach((userId, b) -> following.put(userId, b.build()));
+        in.forEach((userId, b) -> followers.put(userId, b.build()));
+    }
+
+    public boolean isFollowing(long followerId, long followeeId) {
+        return SortedLongArrays.contains(following(followerId), followeeId);
+    }
+
+    /** 是否互相关注 */
+    public boolean isMutual(long a, long b) {
+        return isFollowing(a, b) && isFollowing(b, a);
+    }
+
+    public long[] following(long userId) {
+        return following.getOrDefault(userId, SortedLongArrays.EMPTY);
+    }
+
+    public long[] followers(long userId) {
+        return followers.getOrDefault(userId, SortedLongArrays.EMPTY);
+    }
+
+    /** 与该用户互相关注的人 */
+    public long[] mutuals(long userId) {
+        return SortedLongArrays.intersect(following(userId), followers(userId));
+    }
+
+    /** 两人共同关注的人 */
+    public long[] commonFollowing(long a, long b) {
+        return SortedLongArrays.intersect(following(a), following(b));
+    }
+
+    /**
+     * 按库中已提交的状态同步 followerId 与 followeeIds 之间的关注关系
+     * 同一关注者的同步串行执行，读库和改图都在锁内：多个事务的提交后回调即使乱序执行，
+     * 最后执行的一次读到的也是最后提交之后的状态，关系图不会与库不一致
+     */
+    void sync(long followerId, Collection<Long> followeeIds) {
+        if (followeeIds.isEmpty()) {
+            return;
+        }
+        synchronized (syncLocks[Math.floorMod(followerId, SYNC_LOCKS)]) {
+            Set<Long> present = new HashSet<>(followRepository.findFolloweeIdsAmong(followerId, followeeIds));
+            for (Long followeeId : followeeIds) {
+                if (present.contains(followeeId)) {
+                    add(followerId, followeeId);
+                } else {
+                    remove(followerId, followeeId);
+                }
+            }
+        }
+    }
+
+    void add(long followerId, long followeeId) {
+        following.merge(followerId, new long[]{followeeId}, (cur, v) -> SortedLongArrays.insert(cur, followeeId));
+        followers.merge(followeeId, new long[]{followerId}, (cur, v) -> SortedLongArrays.insert(cur, followerId));
+    }
+
+    void remove(long followerId, long followeeId) {
+        following.computeIfPresent(followerId, (k, cur) -> emptyToNull(SortedLongArrays.remove(cur, followeeId)));
+        followers.computeIfPresent(followeeId, (k, cur) -> emptyToNull(SortedLongArrays.remove(cur, followerId)));
+    }
+
+    private static long[] emptyToNull(long[] set) {
+        return set.length == 0 ? null : set;
+    }
+
+    // 加载时使用的可增长数组
+    private static final class Builder {
+        private long[] values = new long[4];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] build() {
+            return SortedLongArrays.sortDistinct(values, size);
+        }
+    }
+}
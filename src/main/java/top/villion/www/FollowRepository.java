@@ -1,7 +1,9 @@
 package top.villion.www;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import java.util.Collection;
 import java.util.List;
 
 public interface FollowRepository extends JpaRepository<Follow, Long> {
@@ -13,4 +15,11 @@ public interface FollowRepository extends JpaRepository<Follow, Long> {
 
     @Query("select f.followerId from Follow f where f.followeeId = ?1")
     List<Long> findFollowerIdsByFolloweeId(Long followeeId);
+
+    // 关注者与一批用户之间已存在的关注，用于提交后同步关注关系图
+    @Query("select f.followeeId from Follow f where f.followerId = ?1 and f.followeeId in ?2")
+    List<Long> findFolloweeIdsAmong(Long followerId, Collection<Long> followeeIds);
+
+    // 按 id 分页扫描，用于加载关注关系图
+    List<Follow> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
 }
@@ -1,46 +1,159 @@
 package top.villion.www;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 public class FollowService {
 
+    // 关系状态位：1=我关注了对方，2=对方关注了我，3=互相关注
+    public static final int FOLLOWING = 1;
+    public static final int FOLLOWED_BY = 2;
+
+    // 单次批量操作的最大目标数
+    public static final int MAX_BATCH_SIZE = 500;
+
+    private static final String INSERT_SQL = "insert into follows (follower_id, followee_id) values (?, ?)";
+    private static final String DELETE_SQL = "delete from follows where follower_id = ? and followee_id = ?";
+
     @Autowired
     private FollowRepository followRepository;
 
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private FollowGraph followGraph;
+
+    @Autowired
+    private UserProfileCache userProfileCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @Transactional
     public void follow(Long followerId, Long followeeId) {
         if (followerId.equals(followeeId)) throw new IllegalArgumentException("不能关注自己");
-        if (!userRepository.existsById(followeeId)) throw new RuntimeException("被关注用户不存在");
-        if (!followRepository.existsByFollowerIdAndFolloweeId(followerId, followeeId)) {
-            Follow f = new Follow();
-            f.setFollowerId(followerId);
-            f.setFolloweeId(followeeId);
-            followRepository.save(f);
+        if (!userProfileCache.exists(followeeId)) throw new RuntimeException("被关注用户不存在");
+        // 以内存关系图判重；JDBC 插入，唯一索引冲突（并发重复关注）只影响这一条语句，视为已关注
+        if (!followGraph.isFollowing(followerId, followeeId)) {
+            try {
+                jdbcTemplate.update(INSERT_SQL, followerId, followeeId);
+            } catch (DataIntegrityViolationException e) {
+                // 已关注，关系图由下面的同步补齐
+            }
         }
+        TransactionHooks.afterCommit(() -> followGraph.sync(followerId, List.of(followeeId)));
     }
 
     @Transactional
     public void unfollow(Long followerId, Long followeeId) {
         followRepository.deleteByFollowerIdAndFolloweeId(followerId, followeeId);
+        TransactionHooks.afterCommit(() -> followGraph.sync(followerId, List.of(followeeId)));
+    }
+
+    /**
+     * 批量关注：已关注、自己和不存在的用户会被跳过，其余在同一事务内以 JDBC 批量插入
+     * @return 本次新关注的用户ID
+     */
+    @Transactional
+    public List<Long> followBatch(Long followerId, Collection<Long> followeeIds) {
+        Set<Long> targets = distinctTargets(followerId, followeeIds);
+        targets.removeIf(id -> followGraph.isFollowing(followerId, id));
+        if (targets.isEmpty()) return Collections.emptyList();
+        targets.retainAll(new HashSet<>(userRepository.findExistingIds(targets)));
+        if (targets.isEmpty()) return Collections.emptyList();
+
+        List<Long> ids = new ArrayList<>(targets);
+        jdbcTemplate.batchUpdate(INSERT_SQL, ids, ids.size(), (ps, id) -> {
+            ps.setLong(1, followerId);
+            ps.setLong(2, id);
+        });
+        TransactionHooks.afterCommit(() -> followGraph.sync(followerId, ids));
+        return ids;
+    }
+
+    /**
+     * 批量取消关注：未关注的用户会被跳过
+     * @return 本次取消关注的用户ID
+     */
+    @Transactional
+    public List<Long> unfollowBatch(Long followerId, Collection<Long> followeeIds) {
+        Set<Long> targets = distinctTargets(followerId, followeeIds);
+        targets.removeIf(id -> !followGraph.isFollowing(followerId, id));
+        if (targets.isEmpty()) return Collections.emptyList();
+
+        List<Long> ids = new ArrayList<>(targets);
+        jdbcTemplate.batchUpdate(DELETE_SQL, ids, ids.size(), (ps, id) -> {
+            ps.setLong(1, followerId);
+            ps.setLong(2, id);
+        });
+        TransactionHooks.afterCommit(() -> followGraph.sync(followerId, ids));
+        return ids;
+    }
+
+    /**
+     * 批量查询关系状态（内存关系图，无数据库查询）
+     * @return targetId -> 状态位（FOLLOWING | FOLLOWED_BY），按请求顺序
+     */
+    public Map<Long, Integer> getRelationships(Long userId, Collection<Long> targetIds) {
+        if (targetIds.size() > MAX_BATCH_SIZE) throw new IllegalArgumentException("一次最多查询 " + MAX_BATCH_SIZE + " 个用户");
+        Map<Long, Integer> result = new LinkedHashMap<>();
+        for (Long targetId : targetIds) {
+            int status = 0;
+            if (followGraph.isFollowing(userId, targetId)) status |= FOLLOWING;
+            if (followGraph.isFollowing(targetId, userId)) status |= FOLLOWED_BY;
+            result.put(targetId, status);
+        }
+        return result;
     }
 
+    @Transactional(readOnly = true)
     public List<User> getFollowing(Long userId) {
-        List<Long> ids = followRepository.findFolloweeIdsByFollowerId(userId);
-        if (ids.isEmpty()) return Collections.emptyList();
-        return userRepository.findAllById(ids);
+        return findUsers(followGraph.following(userId));
     }
 
+    @Transactional(readOnly = true)
     public List<User> getFollowers(Long userId) {
-        List<Long> ids = followRepository.findFollowerIdsByFolloweeId(userId);
-        if (ids.isEmpty()) return Collections.emptyList();
-        return userRepository.findAllById(ids);
+        return findUsers(followGraph.followers(userId));
+    }
+
+    public boolean isFollowing(Long followerId, Long followeeId) {
+        return followGraph.isFollowing(followerId, followeeId);
+    }
+
+    public long[] getMutualIds(Long userId) {
+        return followGraph.mutuals(userId);
+    }
+
+    public long[] getCommonFollowingIds(Long userId, Long otherId) {
+        return followGraph.commonFollowing(userId, otherId);
+    }
+
+    private Set<Long> distinctTargets(Long followerId, Collection<Long> followeeIds) {
+        if (followeeIds.size() > MAX_BATCH_SIZE) throw new IllegalArgumentException("一次最多操作 " + MAX_BATCH_SIZE + " 个用户");
+        Set<Long> targets = new LinkedHashSet<>(followeeIds);
+        targets.remove(null);
+        targets.remove(followerId);
+        return targets;
+    }
+
+    private List<User> findUsers(long[] ids) {
+        if (ids.length == 0) return Collections.emptyList();
+        List<Long> boxed = new ArrayList<>(ids.length);
+        for (long id : ids) boxed.add(id);
+        return userRepository.findAllById(boxed);
     }
 }
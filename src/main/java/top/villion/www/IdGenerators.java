@@ -0,0 +1,65 @@
+package top.villion.www;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 主键分配：users / rooms 使用 id_generators 表按段（pooled）分配，一次取一段在内存中发号，
+ * 插入时不依赖数据库自增，Hibernate 才能做 JDBC 批量插入。
+ *
+ * 从自增主键迁移过来的库中已有数据，启动时（在接收请求之前）把每个分配段的起点推到当前最大 ID 之后。
+ * follows 仍使用自增主键：批量关注直接走 JDBC 批量插入，不经过 Hibernate。
+ */
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory") // 等 Hibernate 建好 id_generators 表
+public class IdGenerators {
+
+    static final String TABLE = "id_generators";
+    static final String PK_COLUMN = "name";
+    static final String VALUE_COLUMN = "next_val";
+
+    static final String USERS = "users";
+    static final int USERS_ALLOCATION_SIZE = 1000;
+    static final String ROOMS = "rooms";
+    static final int ROOMS_ALLOCATION_SIZE = 100;
+
+    private static final List<Segment> SEGMENTS = List.of(
+            new Segment(USERS, "users", USERS_ALLOCATION_SIZE),
+            new Segment(ROOMS, "rooms", ROOMS_ALLOCATION_SIZE));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public IdGenerators(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void align() {
+        for (Segment segment : SEGMENTS) {
+            Long maxId = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from " + segment.table, Long.class);
+            // pooled 优化器取到 next_val = V 后发放 (V - 段大小, V]，因此 V 至少为 maxId + 段大小
+            long floor = (maxId == null ? 0 : maxId) + segment.allocationSize + 1;
+            List<Long> current = jdbcTemplate.queryForList(
+                    "select " + VALUE_COLUMN + " from " + TABLE + " where " + PK_COLUMN + " = ?", Long.class, segment.name);
+            if (current.isEmpty()) {
+                jdbcTemplate.update("insert into " + TABLE + " (" + PK_COLUMN + ", " + VALUE_COLUMN + ") values (?, ?)",
+                        segment.name, floor);
+            } else if (current.get(0) < floor) {
+                jdbcTemplate.update("update " + TABLE + " set " + VALUE_COLUMN + " = ? where " + PK_COLUMN + " = ? and "
+                        + VALUE_COLUMN + " < ?", floor, segment.name, floor);
+            } else {
+                continue;
+            }
+            log.info("主键分配段 {} 起点调整为 {}（当前最大 ID {}）", segment.name, floor, maxId);
+        }
+    }
+
+    private record Segment(String name, String table, int allocationSize) {
+    }
+}
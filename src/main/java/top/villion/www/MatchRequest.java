@@ -2,7 +2,10 @@ package top.villion.www;
 
 import lombok.Data;
 
+/**
+ * 随机匹配请求；请求者取 STOMP 会话身份，不由请求体指定
+ */
 @Data
 public class MatchRequest {
-    private Long userId; // 请求匹配的用户ID
+    private String preferredGender; // 期望对方性别（可选，为空表示不限）
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+package top.villion.www;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 匹配结果订阅登记：记录每个用户以哪种编码订阅了 /user/queue/match（JSON 或紧凑）
+ *
+ * 发送匹配结果时只按用户实际订阅的编码各发一份，不再对每个用户同时序列化 JSON 和紧凑两份。
+ * 订阅由 RoomSubscriptionInterceptor 登记，会话断开时由 PresenceEventListener 清理。
+ */
+@Component
+public class MatchSubscriptions {
+
+    private static final int JSON = 0;
+    private static final int COMPACT = 1;
+
+    // userId -> [JSON 订阅数, 紧凑订阅数]
+    private final ConcurrentHashMap<Long, AtomicIntegerArray> countsByUser = new ConcurrentHashMap<>();
+    // sessionId -> (subscriptionId -> 订阅)
+    private final ConcurrentHashMap<String, Map<String, Subscription>> subscriptionsBySession = new ConcurrentHashMap<>();
+
+    void add(String sessionId, String subscriptionId, Long userId, boolean compact) {
+        Subscription sub = new Subscription(userId, compact ? COMPACT : JSON);
+        Subscription previous = subscriptionsBySession.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>())
+                .put(subscriptionId, sub);
+        if (previous != null) {
+            decrement(previous);
+        }
+        countsByUser.compute(userId, (id, counts) -> {
+            AtomicIntegerArray next = counts != null ? counts : new AtomicIntegerArray(2);
+            next.incrementAndGet(sub.encoding);
+            return next;
+        });
+    }
+
+    void remove(String sessionId, String subscriptionId) {
+        Map<String, Subscription> subs = subscriptionsBySession.get(sessionId);
+        Subscription sub = subs != null ? subs.remove(subscriptionId) : null;
+        if (sub != null) {
+            decrement(sub);
+        }
+    }
+
+    void removeSession(String sessionId) {
+        Map<String, Subscription> subs = subscriptionsBySession.remove(sessionId);
+        if (subs != null) {
+            subs.values().forEach(this::decrement);
+        }
+    }
+
+    boolean hasJson(Long userId) {
+        return has(userId, JSON);
+    }
+
+    boolean hasCompact(Long userId) {
+        return has(userId, COMPACT);
+    }
+
+    private boolean has(Long userId, int encoding) {
+        AtomicIntegerArray counts = countsByUser.get(userId);
+        return counts != null && counts.get(encoding) > 0;
+    }
+
+    // 计数归零的用户移除，避免只增不减
+    private void decrement(Subscription sub) {
+        countsByUser.computeIfPresent(sub.userId, (id, counts) -> {
+            counts.decrementAndGet(sub.encoding);
+            return counts.get(JSON) <= 0 && counts.get(COMPACT) <= 0 ? null : counts;
+        });
+    }
+
+    private record Subscription(Long userId, int encoding) {
+    }
+}
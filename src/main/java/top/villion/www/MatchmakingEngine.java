@@ -0,0 +1,271 @@
+package top.villion.www;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * 随机匹配引擎：按 性别/年龄段/地区 分桶，批量撮合
+ *
+ * 入队、取消都是 O(1)：只操作 userId 索引和一个无锁收件队列；
+ * 分桶结构只由撮合线程（tick）访问，取消/过期的等待者在桶里惰性清除。
+ * 撮合时跳过并移除已离线的等待者（断开事件与入队竞争时可能留下），不会匹配给不在线的人。
+ */
+@Component
+public class MatchmakingEngine {
+
+    static final int WAITING = 0;
+    static final int CLAIMING = 1;
+    static final int MATCHED = 2;
+    static final int CANCELLED = 3;
+    static final int EXPIRED = 4;
+
+    private static final int AGE_BAND_WIDTH = 5;   // 年龄段宽度（岁）
+    private static final int MAX_SCAN_PER_BUCKET = 32; // 单个桶内最多扫描的候选数
+
+    private final long waiterTtlMillis;
+    private final int maxPerTick;
+    private final PresenceRegistry presenceRegistry;
+
+    // 等待中的用户索引（userId -> 等待者），用于去重和取消
+    private final ConcurrentHashMap<Long, Waiter> waiting = new ConcurrentHashMap<>();
+    // 新入队的等待者，由撮合线程批量取走
+    private final ConcurrentLinkedQueue<Waiter> inbox = new ConcurrentLinkedQueue<>();
+
+    // 以下结构只在持有 tickLock 时访问
+    private final ReentrantLock tickLock = new ReentrantLock();
+    private final ArrayDeque<Waiter> arrivals = new ArrayDeque<>();               // 按入队时间排序，用于过期清理
+    private final Map<String, ArrayDeque<Waiter>> localBuckets = new HashMap<>(); // 性别|地区|年龄段
+    private final Map<String, ArrayDeque<Waiter>> bandBuckets = new HashMap<>();  // 性别|年龄段（跨地区兜底）
+    private final Set<String> genders = new HashSet<>();
+
+    public MatchmakingEngine(@Value("${match.waiter-ttl-seconds:120}") long waiterTtlSeconds,
+                             @Value("${match.max-per-tick:10000}") int maxPerTick,
+                             PresenceRegistry presenceRegistry) {
+        this.waiterTtlMillis = waiterTtlSeconds * 1000;
+        this.maxPerTick = maxPerTick;
+        this.presenceRegistry = presenceRegistry;
+    }
+
+    /**
+     * 加入匹配队列
+     * @param preferredGender 期望对方的性别，为空表示不限
+     * @return false 表示该用户已在队列中
+     */
+    public boolean enqueue(Long userId, String gender, Integer age, String region, String preferredGender) {
+        Waiter waiter = new Waiter(userId, normalize(gender), ageBand(age), normalize(region),
+                preferredGender == null || preferredGender.isBlank() ? null : preferredGender.trim(),
+                System.currentTimeMillis());
+        if (waiting.putIfAbsent(userId, waiter) != null) {
+            return false;
+        }
+        inbox.offer(waiter);
+        return true;
+    }
+
+    /**
+     * 取消匹配（主动取消或断开连接）
+     * @return true 表示成功从队列移除；false 表示不在队列中或已匹配成功
+     */
+    public boolean cancel(Long userId) {
+        Waiter waiter = waiting.remove(userId);
+        if (waiter == null) {
+            return false;
+        }
+        for (;;) {
+            int s = waiter.state.get();
+            if (s == WAITING && waiter.state.compareAndSet(WAITING, CANCELLED)) {
+                return true;
+            }
+            if (s != CLAIMING) {
+                return false;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    public boolean isWaiting(Long userId) {
+        return waiting.containsKey(userId);
+    }
+
+    /** 当前等待人数 */
+    public int size() {
+        return waiting.size();
+    }
+
+    /**
+     * 执行一轮撮合：取走收件队列中的新等待者，为其寻找对象，并清理过期等待者
+     * @param onMatch 每撮合成功一对回调一次
+     * @return 本轮撮合成功的对数
+     */
+    public int tick(BiConsumer<Long, Long> onMatch) {
+        if (!tickLock.tryLock()) {
+            return 0;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            expire(now);
+
+            int pairs = 0;
+            Waiter w;
+            for (int i = 0; i < maxPerTick && (w = inbox.poll()) != null; i++) {
+                if (w.state.get() != WAITING || dropIfOffline(w)) {
+                    continue;
+                }
+                Waiter partner = claimPartner(w);
+                if (partner == null) {
+                    park(w);
+                    continue;
+                }
+                waiting.remove(w.userId, w);
+                waiting.remove(partner.userId, partner);
+                onMatch.accept(w.userId, partner.userId);
+                pairs++;
+            }
+            return pairs;
+        } finally {
+            tickLock.unlock();
+        }
+    }
+
+    // 依次在 同地区同年龄段 -> 同地区相邻年龄段 -> 跨地区 的桶中寻找对象
+    private Waiter claimPartner(Waiter w) {
+        Iterable<String> targets = w.preferredGender != null ? Set.of(w.preferredGender) : genders;
+        Waiter found;
+        for (String g : targets) {
+            if ((found = claimFrom(localBuckets.get(localKey(g, w.region, w.ageBand)), w)) != null) return found;
+        }
+        for (String g : targets) {
+            if ((found = claimFrom(localBuckets.get(localKey(g, w.region, w.ageBand - 1)), w)) != null) return found;
+            if ((found = claimFrom(localBuckets.get(localKey(g, w.region, w.ageBand + 1)), w)) != null) return found;
+        }
+        for (String g : targets) {
+            if ((found = claimFrom(bandBuckets.get(bandKey(g, w.ageBand)), w)) != null) return found;
+            if ((found = claimFrom(bandBuckets.get(bandKey(g, w.ageBand - 1)), w)) != null) return found;
+            if ((found = claimFrom(bandBuckets.get(bandKey(g, w.ageBand + 1)), w)) != null) return found;
+        }
+        return null;
+    }
+
+    private Waiter claimFrom(ArrayDeque<Waiter> bucket, Waiter w) {
+        if (bucket == null) {
+            return null;
+        }
+        int scanned = 0;
+        for (Iterator<Waiter> it = bucket.iterator(); it.hasNext() && scanned < MAX_SCAN_PER_BUCKET; ) {
+            Waiter c = it.next();
+            if (c.state.get() != WAITING) {
+                it.remove(); // 惰性清除已取消/已匹配/已过期的条目
+                continue;
+            }
+            if (dropIfOffline(c)) {
+                it.remove();
+                continue;
+            }
+            scanned++;
+            if (c.userId.equals(w.userId) || !c.accepts(w.gender)) {
+                continue;
+            }
+            if (!c.state.compareAndSet(WAITING, CLAIMING)) {
+                it.remove();
+                continue;
+            }
+            if (w.state.compareAndSet(WAITING, MATCHED)) {
+                c.state.set(MATCHED);
+                it.remove();
+                return c;
+            }
+            // 当前等待者在撮合过程中被取消，放回候选人
+            c.state.set(WAITING);
+            return null;
+        }
+        return null;
+    }
+
+    // 等待者已离线时取消并移出索引
+    private boolean dropIfOffline(Waiter w) {
+        if (presenceRegistry.isOnline(w.userId)) {
+            return false;
+        }
+        if (w.state.compareAndSet(WAITING, CANCELLED)) {
+            waiting.remove(w.userId, w);
+        }
+        return true;
+    }
+
+    private void park(Waiter w) {
+        if (w.state.get() != WAITING) {
+            return;
+        }
+        genders.add(w.gender);
+        arrivals.addLast(w);
+        localBuckets.computeIfAbsent(localKey(w.gender, w.region, w.ageBand), k -> new ArrayDeque<>()).addLast(w);
+        bandBuckets.computeIfAbsent(bandKey(w.gender, w.ageBand), k -> new ArrayDeque<>()).addLast(w);
+    }
+
+    // arrivals 按入队时间有序，只需从队头弹出
+    private void expire(long now) {
+        Waiter head;
+        while ((head = arrivals.peekFirst()) != null) {
+            if (head.state.get() == WAITING) {
+                if (now - head.enqueuedAt < waiterTtlMillis) {
+                    break;
+                }
+                if (head.state.compareAndSet(WAITING, EXPIRED)) {
+                    waiting.remove(head.userId, head);
+                }
+            }
+            arrivals.pollFirst();
+        }
+    }
+
+    private static String normalize(String value) {
+        return value == null || value.isBlank() ? "?" : value.trim();
+    }
+
+    private static int ageBand(Integer age) {
+        return age == null || age <= 0 ? -10 : age / AGE_BAND_WIDTH;
+    }
+
+    private static String localKey(String gender, String region, int band) {
+        return gender + '|' + region + '|' + band;
+    }
+
+    private static String bandKey(String gender, int band) {
+        return gender + '|' + band;
+    }
+
+    static final class Waiter {
+        final Long userId;
+        final String gender;
+        final int ageBand;
+        final String region;
+        final String preferredGender;
+        final long enqueuedAt;
+        final AtomicInteger state = new AtomicInteger(WAITING);
+
+        Waiter(Long userId, String gender, int ageBand, String region, String preferredGender, long enqueuedAt) {
+            this.userId = userId;
+            this.gender = gender;
+            this.ageBand = ageBand;
+            this.region = region;
+            this.preferredGender = preferredGender;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        boolean accepts(String otherGender) {
+            return preferredGender == null || preferredGender.equals(otherGender);
+        }
+    }
+}
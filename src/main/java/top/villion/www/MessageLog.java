@@ -0,0 +1,690 @@
+package top.villion.www;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 房间消息的持久化日志：按段追加写入内存映射文件，不经过 MySQL
+ *
+ * 发送线程只把消息放入有界队列（满了直接丢弃并计数，不阻塞发送线程），由单个写线程批量写入当前段
+ * 并对本批写入的区间做一次 force（组提交）。崩溃时丢失队列中尚未写入的全部消息（最多 queue-capacity 条）
+ * 和正在写入的一批。段写满后滚动到新文件（文件名为段起始位置），按时间或总大小整段删除最旧的段。
+ *
+ * 房间序号由 RoomHistory 分配，日志里丢失的消息可能已经推送给客户端。为了重启后序号不回退、不复用，
+ * 房间每次分配一段序号前先在预留文件（seq-reservations）中同步记下上限并刷盘（reserveSeq），
+ * 启动时房间的最新序号取日志中的最大序号和预留上限中的较大者；正常关闭时按实际分配到的序号重写预留文件（saveSeqs），
+ * 因此只有崩溃重启后序号会跳过一段（不超过预留的段长）。
+ *
+ * 记录格式：长度(int) CRC32C(int) 同房间上一条的位置(long) roomId seq timestamp senderId(long) 内容(UTF-8)；
+ * 每条记录指向同一房间的上一条，内存中只为每个房间保存末尾位置和每 INDEX_INTERVAL 条一个的稀疏索引，
+ * 分页时从索引点沿链表回溯，直接读取映射内存，不做文件 read 和额外拷贝。
+ * 启动时顺序扫描全部段重建房间索引，并在第一条校验失败的记录处截断（半写的记录）。
+ * 临时房间（负数ID）重启后ID会复用，不写入日志。
+ */
+@Slf4j
+@Component
+public class MessageLog {
+
+    private static final int HEADER_BYTES = 48;
+    private static final int INDEX_INTERVAL = 32;
+    private static final int MAX_DRAIN = 4096;
+    private static final long NO_SENDER = Long.MIN_VALUE;
+    private static final String SUFFIX = ".log";
+    private static final String SEQ_FILE = "seq-reservations";
+    private static final int SEQ_RECORD_BYTES = 20; // roomId(long) 序号上限(long) CRC32C(int)
+
+    private final boolean enabled;
+    private final Path dir;
+    private final int segmentBytes;
+    private final long retentionMillis;
+    private final long retentionBytes;
+    private final BlockingQueue<RoomMessage> queue;
+    private final UserProfileCache userProfileCache;
+
+    // 按起始位置升序，整体替换（读线程拿到的是快照）
+    private volatile List<Segment> segments = List.of();
+    private final ConcurrentHashMap<Long, RoomLog> rooms = new ConcurrentHashMap<>();
+    private final LongAdder dropped = new LongAdder();
+    private final CRC32C crc = new CRC32C(); // 只在写线程和启动恢复时使用
+    // 房间序号预留上限，持久化在 SEQ_FILE 中；预留文件的读写都持有 seqLock
+    private final ConcurrentHashMap<Long, Long> reservedSeqs = new ConcurrentHashMap<>();
+    private final Object seqLock = new Object();
+    private final CRC32C seqCrc = new CRC32C();
+    private FileChannel seqChannel;
+
+    private Segment active;
+    private int dirtyFrom;
+    private Thread writer;
+    private volatile boolean running;
+
+    public MessageLog(@Value("${app.message-log.enabled:true}") boolean enabled,
+                      @Value("${app.message-log.dir:data/message-log}") String dir,
+                      @Value("${app.message-log.segment-bytes:67108864}") int segmentBytes,
+                      @Value("${app.message-log.retention-hours:168}") long retentionHours,
+                      @Value("${app.message-log.retention-bytes:10737418240}") long retentionBytes,
+                      @Value("${app.message-log.queue-capacity:65536}") int queueCapacity,
+                      UserProfileCache userProfileCache) {
+        this.enabled = enabled;
+        this.dir = Paths.get(dir);
+        this.segmentBytes = segmentBytes;
+        this.retentionMillis = TimeUnit.HOURS.toMillis(retentionHours);
+        this.retentionBytes = retentionBytes;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.userProfileCache = userProfileCache;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(dir);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(p -> p.getFileName().toString().endsWith(SUFFIX))
+                    .sorted(Comparator.comparing(p -> p.getFileName().toString()))
+                    .toList();
+        }
+        List<Segment> recovered = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            recovered.add(recover(files.get(i), i == files.size() - 1));
+        }
+        if (recovered.isEmpty()) {
+            recovered.add(Segment.create(dir, 0, segmentBytes));
+        }
+        segments = List.copyOf(recovered);
+        active = recovered.get(recovered.size() - 1);
+        dirtyFrom = active.size;
+        synchronized (seqLock) {
+            loadSeqReservations();
+            rewriteSeqReservations();
+        }
+        log.info("消息日志已加载：{} 个段，{} 个房间，{} 字节", recovered.size(), rooms.size(), totalBytes());
+
+        running = true;
+        writer = new Thread(this::runWriter, "message-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        synchronized (seqLock) {
+            try {
+                seqChannel.close();
+            } catch (IOException e) {
+                log.warn("关闭序号预留文件失败", e);
+            }
+        }
+    }
+
+    /**
+     * 异步追加（消息须已分配 seq）；队列满时直接丢弃并计数（message.log.dropped），不阻塞发送线程
+     */
+    public void append(RoomMessage message) {
+        if (!enabled || message.getRoomId() == null || TempRoomRegistry.isTempRoom(message.getRoomId())) {
+            return;
+        }
+        if (!queue.offer(message)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * 房间的最新序号：日志中的最大序号与预留上限中的较大者，没有记录时为 0
+     * 崩溃重启后从这里继续分配，已经发出（但日志里丢失）的序号不会复用
+     */
+    public long lastSeq(Long roomId) {
+        if (!enabled) {
+            return 0;
+        }
+        long reserved = reservedSeqs.getOrDefault(roomId, 0L);
+        RoomLog room = rooms.get(roomId);
+        if (room == null) {
+            return reserved;
+        }
+        synchronized (room) {
+            return Math.max(room.maxSeq, reserved);
+        }
+    }
+
+    /**
+     * 预留房间序号到 upTo（含）：同步写入预留文件并刷盘后才返回，调用方在此之后才能分配这些序号
+     */
+    public void reserveSeq(Long roomId, long upTo) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (seqLock) {
+            try {
+                ByteBuffer record = seqRecord(roomId, upTo);
+                while (record.hasRemaining()) {
+                    seqChannel.write(record);
+                }
+                seqChannel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("写入序号预留文件失败", e);
+            }
+            reservedSeqs.put(roomId, upTo);
+        }
+    }
+
+    /**
+     * 正常关闭时记下各房间实际分配到的最新序号，替换预留上限，重启后序号不跳段
+     */
+    public void saveSeqs(Map<Long, Long> lastSeqs) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (seqLock) {
+            reservedSeqs.putAll(lastSeqs);
+            rewriteSeqReservations();
+        }
+    }
+
+    /**
+     * 序号大于 afterSeq 的前 limit 条，按序号升序
+     */
+    public List<RoomMessage> since(Long roomId, long afterSeq, int limit) {
+        Boundaries b = boundaries(roomId);
+        if (b == null || limit <= 0) {
+            return List.of();
+        }
+        int k = b.firstWithMaxSeqAbove(afterSeq);
+        List<RoomMessage> result = new ArrayList<>();
+        // 同一房间的消息在日志中可能有轻微乱序，凑够 limit 后再多读一个区间
+        boolean extra = false;
+        for (; k < b.size; k++) {
+            readChunk(b, k, m -> m.getSeq() > afterSeq, result);
+            if (extra) {
+                break;
+            }
+            extra = result.size() >= limit;
+        }
+        result.sort(Comparator.comparingLong(RoomMessage::getSeq));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * 序号小于 beforeSeq 的最后 limit 条，按序号升序（向前翻页）
+     */
+    public List<RoomMessage> before(Long roomId, long beforeSeq, int limit) {
+        Boundaries b = boundaries(roomId);
+        if (b == null || limit <= 0) {
+            return List.of();
+        }
+        int k = Math.min(b.firstWithMaxSeqAbove(beforeSeq - 1) + 1, b.size - 1);
+        List<RoomMessage> result = new ArrayList<>();
+        boolean extra = false;
+        for (; k >= 0; k--) {
+            if (!readChunk(b, k, m -> m.getSeq() < beforeSeq, result) || extra) {
+                break;
+            }
+            extra = result.size() >= limit;
+        }
+        result.sort(Comparator.comparingLong(RoomMessage::getSeq));
+        return result.size() > limit ? new ArrayList<>(result.subList(result.size() - limit, result.size())) : result;
+    }
+
+    public void forget(Long roomId) {
+        rooms.remove(roomId);
+        reservedSeqs.remove(roomId);
+    }
+
+    // 以下供指标采集使用
+    long totalBytes() {
+        List<Segment> current = segments;
+        if (current.isEmpty()) {
+            return 0;
+        }
+        Segment last = current.get(current.size() - 1);
+        return last.base + last.size - current.get(0).base;
+    }
+
+    int pending() {
+        return queue.size();
+    }
+
+    long droppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * 按保留时间和总大小删除最旧的段（当前写入段不删）
+     */
+    @Scheduled(fixedDelayString = "${app.message-log.retention-check-ms:60000}")
+    public void enforceRetention() {
+        if (!enabled) {
+            return;
+        }
+        long expireBefore = System.currentTimeMillis() - retentionMillis;
+        while (true) {
+            List<Segment> current = segments;
+            if (current.size() <= 1) {
+                return;
+            }
+            Segment oldest = current.get(0);
+            if (oldest.maxTimestamp >= expireBefore && totalBytes() <= retentionBytes) {
+                return;
+            }
+            if (!removeSegment(oldest)) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(oldest.path);
+            } catch (IOException e) {
+                log.warn("删除消息日志段失败: {}", oldest.path, e);
+            }
+            long start = current.get(1).base;
+            for (RoomLog room : rooms.values()) {
+                synchronized (room) {
+                    room.dropIndexBefore(start);
+                }
+            }
+            log.info("消息日志段 {} 已过期删除", oldest.path.getFileName());
+        }
+    }
+
+    // ------------------------------
+    // 写线程
+    // ------------------------------
+
+    private void runWriter() {
+        List<RoomMessage> batch = new ArrayList<>(MAX_DRAIN);
+        while (running || !queue.isEmpty()) {
+            try {
+                RoomMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_DRAIN - 1);
+                for (RoomMessage message : batch) {
+                    write(message);
+                }
+                commit();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("写入消息日志失败，丢弃 {} 条", batch.size(), e);
+                dropped.add(batch.size());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(RoomMessage message) {
+        byte[] content = message.getContent() == null ? new byte[0] : message.getContent().getBytes(StandardCharsets.UTF_8);
+        int length = HEADER_BYTES + content.length;
+        if (length > segmentBytes) {
+            log.warn("消息过大（{} 字节），未写入日志", length);
+            dropped.increment();
+            return;
+        }
+        if (active.size + length > active.capacity) {
+            roll();
+        }
+        RoomLog room = rooms.computeIfAbsent(message.getRoomId(), id -> new RoomLog());
+        long prev;
+        synchronized (room) {
+            prev = room.tail;
+        }
+
+        MappedByteBuffer buf = active.buffer;
+        int pos = active.size;
+        long seq = message.getSeq() == null ? 0 : message.getSeq();
+        long timestamp = message.getTimestamp() == null ? System.currentTimeMillis() : message.getTimestamp();
+        buf.putLong(pos + 8, prev);
+        buf.putLong(pos + 16, message.getRoomId());
+        buf.putLong(pos + 24, seq);
+        buf.putLong(pos + 32, timestamp);
+        buf.putLong(pos + 40, message.getSenderId() == null ? NO_SENDER : message.getSenderId());
+        buf.put(pos + HEADER_BYTES, content);
+        buf.putInt(pos + 4, checksum(buf, pos, length));
+        buf.putInt(pos, length);
+        active.size = pos + length;
+        active.maxTimestamp = Math.max(active.maxTimestamp, timestamp);
+
+        synchronized (room) {
+            room.append(active.base + pos, seq);
+        }
+    }
+
+    // 组提交：把本批写入的区间刷到磁盘
+    private void commit() {
+        if (active.size > dirtyFrom) {
+            active.buffer.force(dirtyFrom, active.size - dirtyFrom);
+            dirtyFrom = active.size;
+        }
+    }
+
+    private void roll() {
+        commit();
+        try {
+            Segment next = Segment.create(dir, active.base + active.size, segmentBytes);
+            addSegment(next);
+            active = next;
+            dirtyFrom = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // 段列表由写线程（滚动）和清理任务（删除）两处修改
+    private synchronized void addSegment(Segment segment) {
+        List<Segment> current = new ArrayList<>(segments);
+        current.add(segment);
+        segments = List.copyOf(current);
+    }
+
+    private synchronized boolean removeSegment(Segment segment) {
+        List<Segment> current = segments;
+        if (current.size() <= 1 || current.get(0) != segment) {
+            return false;
+        }
+        segments = List.copyOf(current.subList(1, current.size()));
+        return true;
+    }
+
+    private int checksum(ByteBuffer buf, int pos, int length) {
+        crc.reset();
+        crc.update(buf.duplicate().limit(pos + length).position(pos + 8));
+        return (int) crc.getValue();
+    }
+
+    // ------------------------------
+    // 启动恢复
+    // ------------------------------
+
+    private Segment recover(Path path, boolean last) throws IOException {
+        Segment segment = Segment.open(path, last ? segmentBytes : 0);
+        MappedByteBuffer buf = segment.buffer;
+        int pos = 0;
+        while (pos + HEADER_BYTES <= segment.capacity) {
+            int length = buf.getInt(pos);
+            if (length < HEADER_BYTES || length > segment.capacity - pos
+                    || buf.getInt(pos + 4) != checksum(buf, pos, length)) {
+                break;
+            }
+            long roomId = buf.getLong(pos + 16);
+            long seq = buf.getLong(pos + 24);
+            segment.maxTimestamp = Math.max(segment.maxTimestamp, buf.getLong(pos + 32));
+            rooms.computeIfAbsent(roomId, id -> new RoomLog()).append(segment.base + pos, seq);
+            pos += length;
+        }
+        segment.size = pos;
+        if (last && pos + 4 <= segment.capacity && buf.getInt(pos) != 0) {
+            // 截断半写的记录，之后从这里继续写
+            buf.put(pos, new byte[Math.min(HEADER_BYTES, segment.capacity - pos)]);
+            log.warn("消息日志段 {} 在 {} 处有不完整的记录，已截断", path.getFileName(), pos);
+        }
+        if (segment.maxTimestamp == 0) {
+            segment.maxTimestamp = Files.getLastModifiedTime(path).toMillis();
+        }
+        return segment;
+    }
+
+    // ------------------------------
+    // 序号预留文件：定长记录顺序追加，同一房间以最后一条为准；启动和正常关闭时压缩为每房间一条
+    // ------------------------------
+
+    private void loadSeqReservations() throws IOException {
+        Path path = dir.resolve(SEQ_FILE);
+        if (!Files.exists(path)) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(path));
+        while (buf.remaining() >= SEQ_RECORD_BYTES) {
+            long roomId = buf.getLong();
+            long upTo = buf.getLong();
+            int checksum = buf.getInt();
+            if (checksum != seqRecord(roomId, upTo).getInt(16)) {
+                log.warn("序号预留文件在 {} 处有不完整的记录，已忽略之后的内容", buf.position() - SEQ_RECORD_BYTES);
+                break;
+            }
+            reservedSeqs.put(roomId, upTo);
+        }
+    }
+
+    // 先写临时文件再原子替换，替换前崩溃时旧文件仍然完整
+    private void rewriteSeqReservations() {
+        Path path = dir.resolve(SEQ_FILE);
+        Path tmp = dir.resolve(SEQ_FILE + ".tmp");
+        try {
+            if (seqChannel != null) {
+                seqChannel.close();
+            }
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (var entry : reservedSeqs.entrySet()) {
+                    ByteBuffer record = seqRecord(entry.getKey(), entry.getValue());
+                    while (record.hasRemaining()) {
+                        out.write(record);
+                    }
+                }
+                out.force(true);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            seqChannel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("重写序号预留文件失败", e);
+        }
+    }
+
+    private ByteBuffer seqRecord(long roomId, long upTo) {
+        ByteBuffer record = ByteBuffer.allocate(SEQ_RECORD_BYTES);
+        record.putLong(roomId).putLong(upTo);
+        seqCrc.reset();
+        seqCrc.update(record.array(), 0, 16);
+        record.putInt((int) seqCrc.getValue());
+        return record.flip();
+    }
+
+    // ------------------------------
+    // 读取
+    // ------------------------------
+
+    private Boundaries boundaries(Long roomId) {
+        RoomLog room = enabled ? rooms.get(roomId) : null;
+        if (room == null) {
+            return null;
+        }
+        synchronized (room) {
+            return room.tail < 0 ? null : room.boundaries();
+        }
+    }
+
+    /**
+     * 读取区间 k：从边界 k 沿链表回溯到边界 k-1（不含），满足条件的记录加入 out
+     * @return false 表示回溯途中遇到已删除的段，更早的数据不存在
+     */
+    private boolean readChunk(Boundaries b, int k, java.util.function.Predicate<RoomMessage> filter,
+                              List<RoomMessage> out) {
+        List<Segment> current = segments;
+        long stop = k > 0 ? b.positions[k - 1] : -1;
+        long pos = b.positions[k];
+        while (pos > stop) {
+            Segment segment = find(current, pos);
+            if (segment == null) {
+                return false;
+            }
+            RoomMessage message = read(segment.buffer, (int) (pos - segment.base));
+            if (filter.test(message)) {
+                out.add(message);
+            }
+            pos = segment.buffer.getLong((int) (pos - segment.base) + 8);
+        }
+        return stop >= 0 || pos < 0;
+    }
+
+    private RoomMessage read(MappedByteBuffer buf, int pos) {
+        int length = buf.getInt(pos);
+        RoomMessage message = new RoomMessage();
+        message.setRoomId(buf.getLong(pos + 16));
+        message.setSeq(buf.getLong(pos + 24));
+        message.setTimestamp(buf.getLong(pos + 32));
+        long senderId = buf.getLong(pos + 40);
+        message.setSenderId(senderId == NO_SENDER ? null : senderId);
+        message.setContent(StandardCharsets.UTF_8.decode(
+                buf.duplicate().limit(pos + length).position(pos + HEADER_BYTES)).toString());
+        userProfileCache.get(message.getSenderId()).ifPresent(sender -> {
+            message.setSenderName(sender.username());
+            message.setSenderAvatar(sender.avatarUrl());
+        });
+        return message;
+    }
+
+    private static Segment find(List<Segment> segments, long position) {
+        int lo = 0;
+        int hi = segments.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            Segment s = segments.get(mid);
+            if (position < s.base) {
+                hi = mid - 1;
+            } else if (position >= s.base + s.size) {
+                lo = mid + 1;
+            } else {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    private static final class Segment {
+        final long base;
+        final Path path;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        volatile int size;
+        volatile long maxTimestamp;
+
+        private Segment(long base, Path path, MappedByteBuffer buffer) {
+            this.base = base;
+            this.path = path;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+
+        static Segment create(Path dir, long base, int segmentBytes) throws IOException {
+            return open(dir.resolve(String.format("%020d", base) + SUFFIX), segmentBytes);
+        }
+
+        // minBytes > 0 时按该大小映射（文件不足会被扩展），用于可写的当前段
+        static Segment open(Path path, int minBytes) throws IOException {
+            String name = path.getFileName().toString();
+            long base = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long bytes = Math.max(channel.size(), minBytes);
+                return new Segment(base, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes));
+            }
+        }
+    }
+
+    /**
+     * 房间在日志中的位置：末尾记录和稀疏索引（每 INDEX_INTERVAL 条记录一个位置及截至该位置的最大序号）
+     */
+    private static final class RoomLog {
+        long tail = -1;
+        long maxSeq;
+        long count;
+        long[] positions = new long[4];
+        long[] maxSeqs = new long[4];
+        int size;
+
+        void append(long position, long seq) {
+            tail = position;
+            maxSeq = Math.max(maxSeq, seq);
+            if (++count % INDEX_INTERVAL == 0) {
+                if (size == positions.length) {
+                    positions = Arrays.copyOf(positions, size * 2);
+                    maxSeqs = Arrays.copyOf(maxSeqs, size * 2);
+                }
+                positions[size] = position;
+                maxSeqs[size] = maxSeq;
+                size++;
+            }
+        }
+
+        void dropIndexBefore(long start) {
+            int drop = 0;
+            while (drop < size && positions[drop] < start) {
+                drop++;
+            }
+            if (drop > 0) {
+                System.arraycopy(positions, drop, positions, 0, size - drop);
+                System.arraycopy(maxSeqs, drop, maxSeqs, 0, size - drop);
+                size -= drop;
+            }
+        }
+
+        // 索引点加上末尾记录作为回溯的边界
+        Boundaries boundaries() {
+            boolean tailIndexed = size > 0 && positions[size - 1] == tail;
+            int n = tailIndexed ? size : size + 1;
+            long[] p = Arrays.copyOf(positions, n);
+            long[] s = Arrays.copyOf(maxSeqs, n);
+            p[n - 1] = tail;
+            s[n - 1] = maxSeq;
+            return new Boundaries(p, s, n);
+        }
+    }
+
+    private record Boundaries(long[] positions, long[] maxSeqs, int size) {
+
+        // 第一个"截至该边界的最大序号"大于 seq 的边界，没有时返回 size
+        int firstWithMaxSeqAbove(long seq) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (maxSeqs[mid] > seq) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            return lo;
+        }
+    }
+}
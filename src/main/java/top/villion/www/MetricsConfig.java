@@ -0,0 +1,120 @@
+package top.villion.www;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * 热路径指标（/actuator/prometheus）
+ *
+ * 均为函数式 Gauge/FunctionCounter：抓取时才读取当前值，业务代码中没有额外开销。
+ * HTTP 接口耗时（http.server.requests）、Repository 调用耗时、Hikari 和 Hibernate 统计由 Spring Boot 自动采集。
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder matchmakingMetrics(MatchmakingEngine matchmakingEngine) {
+        return registry -> Gauge.builder("match.queue.size", matchmakingEngine, MatchmakingEngine::size)
+                .description("随机匹配等待人数")
+                .register(registry);
+    }
+
+    @Bean
+    public MeterBinder tempRoomMetrics(TempRoomRegistry tempRoomRegistry) {
+        return registry -> Gauge.builder("temp.rooms", tempRoomRegistry, TempRoomRegistry::size)
+                .description("内存中的随机匹配临时房间数")
+                .register(registry);
+    }
+
+    @Bean
+    public MeterBinder messageLogMetrics(MessageLog messageLog) {
+        return registry -> {
+            Gauge.builder("message.log.bytes", messageLog, MessageLog::totalBytes)
+                    .description("消息日志占用的字节数（已写入部分）")
+                    .register(registry);
+            Gauge.builder("message.log.pending", messageLog, MessageLog::pending)
+                    .description("等待写入消息日志的消息数")
+                    .register(registry);
+            FunctionCounter.builder("message.log.dropped", messageLog, MessageLog::droppedCount)
+                    .description("未能写入消息日志的消息数")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder readMarkerMetrics(ReadMarkers readMarkers) {
+        return registry -> Gauge.builder("read.markers.pending", readMarkers, ReadMarkers::pendingWrites)
+                .description("等待批量写入的已读位置数")
+                .register(registry);
+    }
+
+    @Bean
+    public MeterBinder directMessageMetrics(DirectMessageService directMessageService) {
+        return registry -> {
+            Gauge.builder("dm.inbox.messages", directMessageService, DirectMessageService::pendingCount)
+                    .description("离线收件箱中等待投递的私信数")
+                    .register(registry);
+            FunctionCounter.builder("dm.inbox.dropped", directMessageService, DirectMessageService::droppedCount)
+                    .description("收件箱已满或过期而丢弃的私信数")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder presenceMetrics(PresenceRegistry presenceRegistry) {
+        return registry -> {
+            Gauge.builder("presence.online.users", presenceRegistry, PresenceRegistry::onlineCount)
+                    .description("在线用户数")
+                    .register(registry);
+            Gauge.builder("presence.sessions", presenceRegistry, PresenceRegistry::sessionCount)
+                    .description("WebSocket 会话数")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder stompChannelMetrics(@Qualifier("clientInboundChannelExecutor") TaskExecutor inbound,
+                                           @Qualifier("clientOutboundChannelExecutor") TaskExecutor outbound) {
+        return registry -> {
+            bindExecutor(registry, "inbound", inbound);
+            bindExecutor(registry, "outbound", outbound);
+        };
+    }
+
+    @Bean
+    public MeterBinder userProfileCacheMetrics(UserProfileCache cache) {
+        return registry -> {
+            Gauge.builder("user.profile.cache.size", cache, UserProfileCache::size)
+                    .register(registry);
+            FunctionCounter.builder("user.profile.cache.requests", cache, UserProfileCache::hitCount)
+                    .tag("result", "hit")
+                    .register(registry);
+            FunctionCounter.builder("user.profile.cache.requests", cache, UserProfileCache::missCount)
+                    .tag("result", "miss")
+                    .register(registry);
+            FunctionCounter.builder("user.profile.cache.evictions", cache, UserProfileCache::evictionCount)
+                    .register(registry);
+        };
+    }
+
+    // 虚拟线程模式下入站执行器没有队列，不注册
+    private static void bindExecutor(MeterRegistry registry, String channel, TaskExecutor executor) {
+        if (!(executor instanceof ThreadPoolTaskExecutor pool)) {
+            return;
+        }
+        Gauge.builder("stomp.channel.queue.size", pool, p -> p.getThreadPoolExecutor().getQueue().size())
+                .description("STOMP 通道执行器排队的消息数")
+                .tag("channel", channel)
+                .register(registry);
+        Gauge.builder("stomp.channel.active.threads", pool, ThreadPoolTaskExecutor::getActiveCount)
+                .tag("channel", channel)
+                .register(registry);
+    }
+}
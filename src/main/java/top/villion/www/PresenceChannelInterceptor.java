@@ -0,0 +1,48 @@
+package top.villion.www;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * 入站通道拦截器：CONNECT 时补全会话身份，并把每个入站帧（含心跳）记为会话活动
+ */
+@Component
+public class PresenceChannelInterceptor implements ChannelInterceptor {
+
+    static final String USER_ID_HEADER = "userId";
+
+    private final PresenceRegistry presenceRegistry;
+
+    public PresenceChannelInterceptor(PresenceRegistry presenceRegistry) {
+        this.presenceRegistry = presenceRegistry;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor != null && StompCommand.CONNECT.equals(accessor.getCommand()) && accessor.getUser() == null) {
+            // 握手未携带 userId 时，使用 CONNECT 帧的 userId 头
+            String userId = accessor.getFirstNativeHeader(USER_ID_HEADER);
+            if (userId != null) {
+                try {
+                    accessor.setUser(new UserPrincipal(Long.valueOf(userId)));
+                } catch (NumberFormatException e) {
+                    throw new MessagingException(message, "无效的用户ID: " + userId);
+                }
+            }
+        }
+
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId != null) {
+            presenceRegistry.touch(sessionId);
+        }
+        return message;
+    }
+}
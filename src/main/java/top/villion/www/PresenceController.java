@@ -0,0 +1,44 @@
+package top.villion.www;
+
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/presence")
+public class PresenceController {
+
+    private final PresenceRegistry presenceRegistry;
+
+    public PresenceController(PresenceRegistry presenceRegistry) {
+        this.presenceRegistry = presenceRegistry;
+    }
+
+    @GetMapping("/online-count")
+    public Map<String, Integer> getOnlineCount() {
+        return Map.of(
+                "users", presenceRegistry.onlineCount(),
+                "sessions", presenceRegistry.sessionCount());
+    }
+
+    @GetMapping("/{userId}")
+    public Map<String, Object> getPresence(@PathVariable Long userId) {
+        return Map.of(
+                "online", presenceRegistry.isOnline(userId),
+                "lastSeen", presenceRegistry.lastSeen(userId));
+    }
+
+    /**
+     * 批量查询在线状态
+     */
+    @PostMapping("/status")
+    public Map<Long, Boolean> getPresenceBatch(@RequestBody List<Long> userIds) {
+        Map<Long, Boolean> result = new LinkedHashMap<>();
+        for (Long userId : userIds) {
+            result.put(userId, presenceRegistry.isOnline(userId));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,52 @@
+package top.villion.www;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+/**
+ * 根据 WebSocket 会话事件维护在线状态；用户完全离线时退出匹配队列并清理房间订阅
+ */
+@Component
+public class PresenceEventListener {
+
+    private final PresenceRegistry presenceRegistry;
+    private final MatchmakingEngine matchmakingEngine;
+    private final RoomSubscriptionRegistry roomSubscriptionRegistry;
+    private final MatchSubscriptions matchSubscriptions;
+    private final DmSubscriptions dmSubscriptions;
+
+    public PresenceEventListener(PresenceRegistry presenceRegistry,
+                                 MatchmakingEngine matchmakingEngine,
+                                 RoomSubscriptionRegistry roomSubscriptionRegistry,
+                                 MatchSubscriptions matchSubscriptions,
+                                 DmSubscriptions dmSubscriptions) {
+        this.presenceRegistry = presenceRegistry;
+        this.matchmakingEngine = matchmakingEngine;
+        this.roomSubscriptionRegistry = roomSubscriptionRegistry;
+        this.matchSubscriptions = matchSubscriptions;
+        this.dmSubscriptions = dmSubscriptions;
+    }
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        Long userId = UserPrincipal.userIdOf(event.getUser());
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (userId != null && sessionId != null) {
+            presenceRegistry.connect(sessionId, userId);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        roomSubscriptionRegistry.removeSession(event.getSessionId());
+        matchSubscriptions.removeSession(event.getSessionId());
+        dmSubscriptions.removeSession(event.getSessionId());
+        Long offlineUserId = presenceRegistry.disconnect(event.getSessionId());
+        if (offlineUserId != null) {
+            matchmakingEngine.cancel(offlineUserId);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package top.villion.www;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在线状态登记：userId -> WebSocket 会话
+ *
+ * ConcurrentHashMap 按桶分段加锁，查询 O(1) 且无锁；
+ * 每个用户的会话列表是写时复制的小数组（同一用户通常只有 1~3 个会话）。
+ */
+@Component
+public class PresenceRegistry {
+
+    private static final String[] NO_SESSIONS = new String[0];
+
+    // userId -> 会话ID
+    private final ConcurrentHashMap<Long, String[]> sessionsByUser = new ConcurrentHashMap<>();
+    // sessionId -> 会话信息
+    private final ConcurrentHashMap<String, SessionInfo> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger onlineUsers = new AtomicInteger();
+
+    /**
+     * 登记会话
+     * @return true 表示该用户由离线变为在线
+     */
+    public boolean connect(String sessionId, Long userId) {
+        if (sessions.putIfAbsent(sessionId, new SessionInfo(userId)) != null) {
+            return false;
+        }
+        boolean[] cameOnline = new boolean[1];
+        sessionsByUser.compute(userId, (id, cur) -> {
+            if (cur == null) {
+                cameOnline[0] = true;
+                onlineUsers.incrementAndGet();
+                return new String[]{sessionId};
+            }
+            String[] next = Arrays.copyOf(cur, cur.length + 1);
+            next[cur.length] = sessionId;
+            return next;
+        });
+        return cameOnline[0];
+    }
+
+    /**
+     * 注销会话（断开事件可能重复，重复调用无副作用）
+     * @return 该用户由在线变为离线时返回用户ID，否则返回 null
+     */
+    public Long disconnect(String sessionId) {
+        SessionInfo info = sessions.remove(sessionId);
+        if (info == null) {
+            return null;
+        }
+        boolean[] wentOffline = new boolean[1];
+        sessionsByUser.computeIfPresent(info.userId, (id, cur) -> {
+            int at = Arrays.asList(cur).indexOf(sessionId);
+            if (at < 0) {
+                return cur;
+            }
+            if (cur.length == 1) {
+                wentOffline[0] = true;
+                onlineUsers.decrementAndGet();
+                return null;
+            }
+            String[] next = new String[cur.length - 1];
+            System.arraycopy(cur, 0, next, 0, at);
+            System.arraycopy(cur, at + 1, next, at, cur.length - at - 1);
+            return next;
+        });
+        return wentOffline[0] ? info.userId : null;
+    }
+
+    /**
+     * 记录会话活动（心跳或任意入站帧）
+     */
+    public void touch(String sessionId) {
+        SessionInfo info = sessions.get(sessionId);
+        if (info != null) {
+            info.lastSeen = System.currentTimeMillis();
+        }
+    }
+
+    public boolean isOnline(Long userId) {
+        return userId != null && sessionsByUser.containsKey(userId);
+    }
+
+    public String[] sessionsOf(Long userId) {
+        return sessionsByUser.getOrDefault(userId, NO_SESSIONS);
+    }
+
+    /**
+     * 用户最近一次活动时间（毫秒），离线返回 0
+     */
+    public long lastSeen(Long userId) {
+        long last = 0;
+        for (String sessionId : sessionsOf(userId)) {
+            SessionInfo info = sessions.get(sessionId);
+            if (info != null) {
+                last = Math.max(last, info.lastSeen);
+            }
+        }
+        return last;
+    }
+
+    public int onlineCount() {
+        return onlineUsers.get();
+    }
+
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    private static final class SessionInfo {
+        final Long userId;
+        volatile long lastSeen = System.currentTimeMillis();
+
+        SessionInfo(Long userId) {
+            this.userId = userId;
+        }
+    }
+}
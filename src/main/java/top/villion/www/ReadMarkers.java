@@ -0,0 +1,266 @@
+package top.villion.www;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 未读数和已读回执
+ *
+ * 房间消息带连续的序号（RoomHistory），未读数 = 房间最新序号 - 用户已读序号，新消息到来时不需要逐个成员累加。
+ * 每个用户的已读位置是两个按房间ID排序的 long[]（房间ID、已读序号），首次查询时从数据库加载；
+ * 已读位置的变化先合并在内存中（同一用户同一房间只保留最大值），定时批量写入 room_read_markers。
+ * 已读回执按房间合并，定时推送到 /topic/rooms/{roomId}/receipts。临时房间只推送回执，不记录已读位置。
+ */
+@Slf4j
+@Component
+public class ReadMarkers {
+
+    private static final int FLUSH_BATCH_SIZE = 500;
+    private static final String UPSERT_SQL = "insert into room_read_markers (user_id, room_id, last_read_seq) values (?, ?, ?) "
+            + "on duplicate key update last_read_seq = greatest(last_read_seq, values(last_read_seq))";
+    private static final String SELECT_SQL = "select room_id, last_read_seq from room_read_markers where user_id = ?";
+    private static final String DELETE_ROOM_SQL = "delete from room_read_markers where room_id = ?";
+
+    private final RoomRepository roomRepository;
+    private final RoomHistory roomHistory;
+    private final JdbcTemplate jdbcTemplate;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    // userId -> 已加载的已读位置
+    private final ConcurrentHashMap<Long, UserMarkers> users = new ConcurrentHashMap<>();
+    // 待写入数据库的已读位置
+    private final ConcurrentHashMap<MarkerKey, Long> dirty = new ConcurrentHashMap<>();
+    // roomId -> (userId -> seq) 待推送的回执
+    private final ConcurrentHashMap<Long, Map<Long, Long>> receipts = new ConcurrentHashMap<>();
+    // 成员关系变更计数：加载期间有变更时不缓存加载结果
+    private final AtomicLong membershipVersion = new AtomicLong();
+
+    public ReadMarkers(RoomRepository roomRepository,
+                       RoomHistory roomHistory,
+                       JdbcTemplate jdbcTemplate,
+                       @Lazy SimpMessagingTemplate messagingTemplate) {
+        this.roomRepository = roomRepository;
+        this.roomHistory = roomHistory;
+        this.jdbcTemplate = jdbcTemplate;
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    /**
+     * 标记已读到 seq（超过房间最新序号时按最新序号），已读位置只会前进
+     */
+    public void markRead(Long userId, Long roomId, long seq) {
+        long latest = roomHistory.latestSeq(roomId);
+        long read = Math.min(seq, latest);
+        if (read <= 0) {
+            return;
+        }
+        receipts.compute(roomId, (id, pending) -> {
+            Map<Long, Long> map = pending != null ? pending : new HashMap<>();
+            map.merge(userId, read, Math::max);
+            return map;
+        });
+        if (TempRoomRegistry.isTempRoom(roomId)) {
+            return;
+        }
+        UserMarkers markers = users.get(userId);
+        if (markers != null) {
+            markers.advance(roomId, read);
+        }
+        dirty.merge(new MarkerKey(userId, roomId), read, Math::max);
+    }
+
+    /**
+     * 用户所在全部房间的未读数（按房间ID升序）
+     */
+    public List<UnreadCount> unreadCounts(Long userId) {
+        UserMarkers markers = load(userId);
+        long[] roomIds;
+        long[] lastRead;
+        synchronized (markers) {
+            roomIds = markers.roomIds;
+            lastRead = Arrays.copyOf(markers.lastRead, markers.lastRead.length);
+        }
+        List<UnreadCount> counts = new ArrayList<>(roomIds.length);
+        for (int i = 0; i < roomIds.length; i++) {
+            long latest = roomHistory.latestSeq(roomIds[i]);
+            counts.add(new UnreadCount(roomIds[i], Math.max(0, latest - lastRead[i]), lastRead[i], latest));
+        }
+        return counts;
+    }
+
+    /**
+     * 加入房间：已读位置从当前最新消息开始，之前的消息不计入未读
+     */
+    public void onJoin(Long roomId, Long userId) {
+        membershipVersion.incrementAndGet();
+        long latest = roomHistory.latestSeq(roomId);
+        UserMarkers markers = users.get(userId);
+        if (markers != null) {
+            markers.join(roomId, latest);
+        }
+        if (latest > 0) {
+            dirty.merge(new MarkerKey(userId, roomId), latest, Math::max);
+        }
+    }
+
+    public void onLeave(Long roomId, Long userId) {
+        membershipVersion.incrementAndGet();
+        UserMarkers markers = users.get(userId);
+        if (markers != null) {
+            markers.leave(roomId);
+        }
+    }
+
+    public void onRoomDeleted(Long roomId) {
+        membershipVersion.incrementAndGet();
+        for (UserMarkers markers : users.values()) {
+            markers.leave(roomId);
+        }
+        dirty.keySet().removeIf(key -> key.roomId == roomId);
+        receipts.remove(roomId);
+        jdbcTemplate.update(DELETE_ROOM_SQL, roomId);
+    }
+
+    /**
+     * 合并后的回执按房间推送，每个房间一帧
+     */
+    @Scheduled(fixedDelayString = "${app.read-markers.receipt-interval-ms:1000}")
+    public void publishReceipts() {
+        for (Long roomId : receipts.keySet()) {
+            Map<Long, Long> pending = receipts.remove(roomId);
+            if (pending == null) {
+                continue;
+            }
+            List<ReadReceipt> batch = new ArrayList<>(pending.size());
+            pending.forEach((userId, seq) -> batch.add(new ReadReceipt(roomId, userId, seq)));
+            messagingTemplate.convertAndSend(RoomSubscriptionRegistry.receiptsDestination(roomId), batch);
+        }
+    }
+
+    /**
+     * 把变化的已读位置批量写入数据库
+     */
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${app.read-markers.flush-interval-ms:5000}")
+    public void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<MarkerKey, Long>> batch = new ArrayList<>(dirty.entrySet());
+        for (int from = 0; from < batch.size(); from += FLUSH_BATCH_SIZE) {
+            List<Map.Entry<MarkerKey, Long>> chunk = batch.subList(from, Math.min(from + FLUSH_BATCH_SIZE, batch.size()));
+            try {
+                jdbcTemplate.batchUpdate(UPSERT_SQL, chunk, chunk.size(), (ps, entry) -> {
+                    ps.setLong(1, entry.getKey().userId);
+                    ps.setLong(2, entry.getKey().roomId);
+                    ps.setLong(3, entry.getValue());
+                });
+            } catch (RuntimeException e) {
+                // 保留在 dirty 中，下次重试
+                log.warn("已读位置写入失败，{} 条待重试", batch.size() - from, e);
+                return;
+            }
+            // 写入期间又前进过的位置保留，下次再写
+            for (Map.Entry<MarkerKey, Long> entry : chunk) {
+                dirty.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    // 供指标采集使用
+    int pendingWrites() {
+        return dirty.size();
+    }
+
+    private UserMarkers load(Long userId) {
+        UserMarkers cached = users.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        long version = membershipVersion.get();
+        long[] ids = roomRepository.findRoomIdsByMemberId(userId).stream().mapToLong(Long::longValue).toArray();
+        long[] roomIds = SortedLongArrays.sortDistinct(ids, ids.length);
+        long[] lastRead = new long[roomIds.length];
+        jdbcTemplate.query(SELECT_SQL, rs -> {
+            int i = Arrays.binarySearch(roomIds, rs.getLong(1));
+            if (i >= 0) {
+                lastRead[i] = Math.max(lastRead[i], rs.getLong(2));
+            }
+        }, userId);
+        UserMarkers loaded = new UserMarkers(roomIds, lastRead);
+        // 还没写入数据库的已读位置
+        for (int i = 0; i < roomIds.length; i++) {
+            Long pending = dirty.get(new MarkerKey(userId, roomIds[i]));
+            if (pending != null) {
+                loaded.advance(roomIds[i], pending);
+            }
+        }
+        if (membershipVersion.get() != version) {
+            return loaded; // 加载期间有人加入/离开房间，结果可能已过期，不缓存
+        }
+        UserMarkers existing = users.putIfAbsent(userId, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    private record MarkerKey(long userId, long roomId) {
+    }
+
+    /**
+     * 一个用户的已读位置：roomIds 升序，lastRead 与之一一对应；加入/离开房间时整体替换数组
+     */
+    private static final class UserMarkers {
+        long[] roomIds;
+        long[] lastRead;
+
+        UserMarkers(long[] roomIds, long[] lastRead) {
+            this.roomIds = roomIds;
+            this.lastRead = lastRead;
+        }
+
+        synchronized void advance(long roomId, long seq) {
+            int i = Arrays.binarySearch(roomIds, roomId);
+            if (i >= 0 && seq > lastRead[i]) {
+                lastRead[i] = seq;
+            }
+        }
+
+        synchronized void join(long roomId, long seq) {
+            if (SortedLongArrays.contains(roomIds, roomId)) {
+                return;
+            }
+            long[] ids = SortedLongArrays.insert(roomIds, roomId);
+            int at = Arrays.binarySearch(ids, roomId);
+            long[] read = new long[ids.length];
+            System.arraycopy(lastRead, 0, read, 0, at);
+            read[at] = seq;
+            System.arraycopy(lastRead, at, read, at + 1, lastRead.length - at);
+            roomIds = ids;
+            lastRead = read;
+        }
+
+        synchronized void leave(long roomId) {
+            int at = Arrays.binarySearch(roomIds, roomId);
+            if (at < 0) {
+                return;
+            }
+            long[] read = new long[lastRead.length - 1];
+            System.arraycopy(lastRead, 0, read, 0, at);
+            System.arraycopy(lastRead, at + 1, read, at, lastRead.length - at - 1);
+            roomIds = SortedLongArrays.remove(roomIds, roomId);
+            lastRead = read;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package top.villion.www;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 已读回执：userId 已读到房间 roomId 的第 seq 条消息
+ * 客户端发送到 /app/read；同一房间的回执按时间窗口合并后推送到 /topic/rooms/{roomId}/receipts
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReadReceipt {
+    private Long roomId;
+    private Long userId;
+    private Long seq;
+}
@@ -0,0 +1,69 @@
+package top.villion.www;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 读写分离路由：只读事务轮询分配到从库连接池，其余（写事务、无事务）走主库
+ *
+ * 路由在取得物理连接时决定，必须包在 LazyConnectionDataSourceProxy 里使用：
+ * 事务开始时只拿到代理连接，执行第一条语句时只读标记已经设置好。
+ */
+class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    static final String PRIMARY = "primary";
+
+    private final HikariDataSource primary;
+    private final List<HikariDataSource> replicas;
+    private final String[] replicaKeys;
+    private final ReadYourWrites readYourWrites;
+    private final AppMetrics appMetrics;
+    private final AtomicInteger next = new AtomicInteger();
+
+    ReadWriteRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas,
+                               ReadYourWrites readYourWrites, AppMetrics appMetrics) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.readYourWrites = readYourWrites;
+        this.appMetrics = appMetrics;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        replicaKeys = new String[replicas.size()];
+        for (int i = 0; i < replicas.size(); i++) {
+            replicaKeys[i] = "replica-" + i;
+            targets.put(replicaKeys[i], replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                readYourWrites.onWriteTransaction();
+            }
+            appMetrics.dbRouted(AppMetrics.ROUTE_PRIMARY);
+            return PRIMARY;
+        }
+        if (replicaKeys.length == 0 || readYourWrites.isSticky()) {
+            appMetrics.dbRouted(AppMetrics.ROUTE_STICKY);
+            return PRIMARY;
+        }
+        appMetrics.dbRouted(AppMetrics.ROUTE_REPLICA);
+        return replicaKeys[Math.floorMod(next.getAndIncrement(), replicaKeys.length)];
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(HikariDataSource::close);
+        primary.close();
+    }
+}
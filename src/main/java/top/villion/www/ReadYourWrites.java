@@ -0,0 +1,63 @@
+package top.villion.www;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 读己之写：用户自己提交写事务后的一段时间内，他的只读事务仍走主库，避免读到从库延迟前的旧数据
+ *
+ * 当前用户由 ReadYourWritesInterceptor 按请求绑定到线程（HTTP 请求头 X-User-Id 或 userId 参数，STOMP 会话身份）；
+ * 没有绑定用户的只读事务不受影响。window-ms 为 0 时关闭。
+ */
+@Component
+public class ReadYourWrites {
+
+    private final long windowMillis;
+    private final ThreadLocal<Long> currentUser = new ThreadLocal<>();
+    // userId -> 最近一次写事务提交时间
+    private final ConcurrentHashMap<Long, Long> lastWrite = new ConcurrentHashMap<>();
+
+    public ReadYourWrites(@Value("${app.datasource.sticky-window-ms:2000}") long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    void bind(Long userId) {
+        currentUser.set(userId);
+    }
+
+    void clear() {
+        currentUser.remove();
+    }
+
+    /**
+     * 当前用户开启了写事务：提交后开始计算粘滞窗口
+     */
+    void onWriteTransaction() {
+        Long userId = currentUser.get();
+        if (userId != null && windowMillis > 0) {
+            TransactionHooks.afterCommit(() -> lastWrite.put(userId, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * 当前用户是否仍在写后的粘滞窗口内
+     */
+    boolean isSticky() {
+        Long userId = currentUser.get();
+        if (userId == null) {
+            return false;
+        }
+        Long writtenAt = lastWrite.get(userId);
+        return writtenAt != null && System.currentTimeMillis() - writtenAt < windowMillis;
+    }
+
+    // 清理已过窗口的记录
+    @Scheduled(fixedDelay = 60_000)
+    public void prune() {
+        long cutoff = System.currentTimeMillis() - windowMillis;
+        lastWrite.values().removeIf(writtenAt -> writtenAt < cutoff);
+    }
+}
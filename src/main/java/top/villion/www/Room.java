@@ -7,11 +7,14 @@ import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "rooms")
+@Table(name = "rooms", indexes = @Index(name = "idx_rooms_member_count", columnList = "member_count, id"))
 @Data
 public class Room {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "rooms_id")
+    @TableGenerator(name = "rooms_id", table = IdGenerators.TABLE,
+            pkColumnName = IdGenerators.PK_COLUMN, valueColumnName = IdGenerators.VALUE_COLUMN,
+            pkColumnValue = IdGenerators.ROOMS, allocationSize = IdGenerators.ROOMS_ALLOCATION_SIZE)
     private Long id;
 
     @Column(nullable = false)
@@ -22,6 +25,10 @@ public class Room {
     @Column(name = "max_capacity")
     private Integer maxCapacity = 8;
 
+    // 当前成员数（占用计数），加入/离开时通过条件更新维护，无需加载 members
+    @Column(name = "member_count", nullable = false)
+    private Integer memberCount = 0;
+
     @Column(name = "created_by")
     private Long createdBy;
 
@@ -1,25 +1,79 @@
 package top.villion.www;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
-import java.util.Optional;
 
 @RestController
 @RequestMapping("/rooms")
 public class RoomController {
 
+    private static final int MAX_PAGE_SIZE = 200;
+
     private final RoomService roomService;
-    private final UserRepository userRepository;
+    private final UserProfileCache userProfileCache;
+    private final RoomSubscriptionRegistry roomSubscriptionRegistry;
+    private final RoomHistory roomHistory;
+    private final ReadMarkers readMarkers;
 
-    public RoomController(RoomService roomService, UserRepository userRepository) {
+    public RoomController(RoomService roomService, UserProfileCache userProfileCache,
+                          RoomSubscriptionRegistry roomSubscriptionRegistry, RoomHistory roomHistory,
+                          ReadMarkers readMarkers) {
         this.roomService = roomService;
-        this.userRepository = userRepository;
+        this.userProfileCache = userProfileCache;
+        this.roomSubscriptionRegistry = roomSubscriptionRegistry;
+        this.roomHistory = roomHistory;
+        this.readMarkers = readMarkers;
     }
 
     // 其他方法保持不变...
 
+    /**
+     * 大厅房间列表（键集分页）
+     * GET /rooms?sort=recent|occupancy&cursor=上一页的nextCursor&size=50
+     * 第一页不传 cursor；nextCursor 为空表示没有更多，换排序方式时从第一页开始
+     */
+    @GetMapping
+    public ResponseEntity<RoomLobbyPage> getRooms(
+            @RequestParam(defaultValue = RoomServiceImpl.SORT_RECENT) String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size) {
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        return ResponseEntity.ok(roomService.getRoomSummaries(sort, cursor, limit));
+    }
+
+    /**
+     * 搜索房间（名称/简介，支持前缀和包含匹配）
+     * GET /rooms/search?keyword=xxx&limit=20
+     */
+    @GetMapping("/search")
+    public ResponseEntity<List<RoomSearchHit>> searchRooms(
+            @RequestParam String keyword,
+            @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(roomService.searchRooms(keyword, Math.min(limit, 100)));
+    }
+
+    /**
+     * 修改房间信息，容量小于当前人数时返回 409
+     * PUT /rooms/{roomId}
+     */
+    @PutMapping("/{roomId}")
+    public ResponseEntity<RoomSummary> updateRoom(@PathVariable Long roomId, @RequestBody Room updateData) {
+        return ResponseEntity.ok(roomService.updateRoom(roomId, updateData));
+    }
+
+    /**
+     * 删除房间
+     * DELETE /rooms/{roomId}
+     */
+    @DeleteMapping("/{roomId}")
+    public ResponseEntity<Void> deleteRoom(@PathVariable Long roomId) {
+        roomService.deleteRoom(roomId);
+        return ResponseEntity.noContent().build();
+    }
+
     /**
      * 加入聊天室（修复参数接收问题）
      * POST /rooms/{roomId}/join
@@ -35,8 +89,7 @@ public class RoomController {
             }
 
             // 2. 验证用户是否存在
-            Optional<User> userOpt = userRepository.findById(request.getUserId());
-            if (userOpt.isEmpty()) {
+            if (!userProfileCache.exists(request.getUserId())) {
                 return ResponseEntity.notFound().build();  // 用户不存在返回404
             }
 
@@ -71,6 +124,96 @@ public class RoomController {
         }
     }
 
+    /**
+     * 房间消息（内存缓冲区和消息日志，不查数据库），断线重连后用最后收到的 seq 补齐
+     * GET /rooms/{roomId}/messages?userId=1&since=0&limit=50
+     * 返回 seq 大于 since 的消息；since 为 0 或落后超过 limit 条时返回最新的 limit 条；gap=true 表示中间有消息未返回
+     * 带 before 时向前翻页：GET /rooms/{roomId}/messages?userId=1&before=1024&limit=50 返回 seq 小于 before 的最后 limit 条
+     */
+    @GetMapping("/{roomId}/messages")
+    public ResponseEntity<RoomHistoryPage> getRecentMessages(
+            @PathVariable Long roomId,
+            @RequestParam Long userId,
+            @RequestParam(defaultValue = "0") long since,
+            @RequestParam(required = false) Long before,
+            @RequestParam(defaultValue = "50") int limit) {
+        if (!roomSubscriptionRegistry.isMember(roomId, userId)) {
+            throw new RuntimeException("不是房间成员，无法查看消息");
+        }
+        if (before != null) {
+            return ResponseEntity.ok(roomHistory.before(roomId, before, Math.max(1, limit)));
+        }
+        return ResponseEntity.ok(roomHistory.since(roomId, Math.max(since, 0), Math.max(1, limit)));
+    }
+
+    /**
+     * 标记已读（WebSocket 客户端也可以发送到 /app/read）
+     * POST /rooms/{roomId}/read  header: X-User-Id: 1  body: {"seq": 1024}
+     * 只能标记自己的已读位置：调用者身份取请求的认证身份（没有时取 X-User-Id 头），
+     * 缺少身份返回 401，body 中的 userId 与调用者不一致返回 403
+     */
+    @PostMapping("/{roomId}/read")
+    public ResponseEntity<Void> markRead(@PathVariable Long roomId, @RequestBody ReadReceipt request,
+                                         HttpServletRequest httpRequest) {
+        Long callerId = UserPrincipal.userIdOf(httpRequest.getUserPrincipal());
+        if (callerId == null) {
+            callerId = parseUserId(httpRequest.getHeader(ReadYourWritesInterceptor.USER_HEADER));
+        }
+        if (callerId == null) {
+            return ResponseEntity.status(401).build();
+        }
+        if (request.getUserId() != null && !request.getUserId().equals(callerId)) {
+            return ResponseEntity.status(403).build();
+        }
+        if (request.getSeq() == null) {
+            throw new RuntimeException("消息序号不能为空");
+        }
+        if (!roomSubscriptionRegistry.isMember(roomId, callerId)) {
+            throw new RuntimeException("不是房间成员");
+        }
+        readMarkers.markRead(callerId, roomId, request.getSeq());
+        return ResponseEntity.noContent().build();
+    }
+
+    private static Long parseUserId(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 批量加入聊天室
+     * POST /rooms/{roomId}/join/batch
+     */
+    @PostMapping("/{roomId}/join/batch")
+    public ResponseEntity<Integer> joinRoomBatch(
+            @PathVariable Long roomId,
+            @RequestBody BatchRoomRequest request) {
+        if (request.getUserIds() == null || request.getUserIds().isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(roomService.joinRoomBatch(roomId, request.getUserIds()));
+    }
+
+    /**
+     * 批量离开聊天室
+     * POST /rooms/{roomId}/leave/batch
+     */
+    @PostMapping("/{roomId}/leave/batch")
+    public ResponseEntity<Integer> leaveRoomBatch(
+            @PathVariable Long roomId,
+            @RequestBody BatchRoomRequest request) {
+        if (request.getUserIds() == null || request.getUserIds().isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(roomService.leaveRoomBatch(roomId, request.getUserIds()));
+    }
+
     // 专用请求类（确保参数名正确）
     public static class JoinRoomRequest {
         private Long userId;  // 与前端传递的参数名一致
@@ -84,4 +227,17 @@ public class RoomController {
             this.userId = userId;
         }
     }
+
+    // 批量加入/离开请求
+    public static class BatchRoomRequest {
+        private List<Long> userIds;
+
+        public List<Long> getUserIds() {
+            return userIds;
+        }
+
+        public void setUserIds(List<Long> userIds) {
+            this.userIds = userIds;
+        }
+    }
 }
@@ -0,0 +1,58 @@
+package top.villion.www;
+
+/**
+ * 房间消息的几种订阅形式，对应 /topic/rooms/{roomId} 下的不同目的地
+ *
+ * JSON          逐条 JSON（默认）
+ * JSON_BATCH    JSON 数组，按窗口合并（见 RoomMessageCoalescer）
+ * COMPACT       紧凑编码，逐条（见 CompactCodec）
+ * COMPACT_BATCH 紧凑编码，按窗口合并
+ */
+enum RoomFeed {
+
+    JSON(""),
+    JSON_BATCH("/batch"),
+    COMPACT("/compact"),
+    COMPACT_BATCH("/compact/batch");
+
+    private static final RoomFeed[] VALUES = values();
+
+    final String suffix;
+
+    RoomFeed(String suffix) {
+        this.suffix = suffix;
+    }
+
+    String destination(Long roomId) {
+        return RoomSubscriptionRegistry.ROOM_TOPIC_PREFIX + roomId + suffix;
+    }
+
+    boolean batch() {
+        return this == JSON_BATCH || this == COMPACT_BATCH;
+    }
+
+    boolean compact() {
+        return this == COMPACT || this == COMPACT_BATCH;
+    }
+
+    static RoomFeed of(boolean compact, boolean batch) {
+        if (compact) {
+            return batch ? COMPACT_BATCH : COMPACT;
+        }
+        return batch ? JSON_BATCH : JSON;
+    }
+
+    /**
+     * 按后缀识别房间目的地的订阅形式（先匹配较长的后缀），不带后缀时为 JSON
+     */
+    static RoomFeed fromDestination(String destination) {
+        RoomFeed found = JSON;
+        for (RoomFeed feed : VALUES) {
+            if (!feed.suffix.isEmpty() && destination.endsWith(feed.suffix)
+                    && feed.suffix.length() > found.suffix.length()) {
+                found = feed;
+            }
+        }
+        return found;
+    }
+}
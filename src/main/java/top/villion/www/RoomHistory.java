@@ -0,0 +1,280 @@
+package top.villion.www;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 房间最近消息：每个房间一个预分配的环形缓冲区，保存最近 size 条消息，不读写数据库
+ *
+ * 追加无锁：先原子递增房间序号，再把消息 CAS 写入 seq & mask 槽位（槽位里已是更新的消息时放弃）。
+ * 读取按序号从旧到新扫描，遇到还没写入的槽位（写线程正在追加）就停止，保证返回的序号连续、不会跳过正在写入的消息；
+ * 已被覆盖的旧消息和重启前已丢失的序号跳过，并通过 gap 告知客户端。
+ *
+ * 消息同时写入持久化日志（MessageLog）：房间缓冲区首次使用时从日志恢复序号和最近消息，服务重启后序号不会重置。
+ * 日志异步写入，崩溃时可能丢失已经推送出去的消息，因此序号按 seq-reserve 条一段先在日志中预留（同步刷盘）再分配，
+ * 崩溃重启后从预留上限继续，不会复用已发出的序号；正常关闭时记下实际的最新序号。
+ * 请求的起点已超出缓冲区时从日志补齐；首次读取或起点太旧时只返回最新的一页。
+ */
+@Component
+public class RoomHistory {
+
+    // 从日志补齐时单页的上限
+    private static final int MAX_LOG_PAGE = 500;
+
+    private final int capacity;
+    private final int seqReserve;
+    private final MessageLog messageLog;
+    private final ConcurrentHashMap<Long, Ring> rings = new ConcurrentHashMap<>();
+
+    public RoomHistory(@Value("${app.room-history.size:128}") int size,
+                       @Value("${app.room-history.seq-reserve:128}") int seqReserve,
+                       MessageLog messageLog) {
+        // 向上取整为 2 的幂，槽位用位运算定位
+        this.capacity = size <= 2 ? 2 : Integer.highestOneBit(size - 1) << 1;
+        this.seqReserve = Math.max(1, seqReserve);
+        this.messageLog = messageLog;
+    }
+
+    /**
+     * 正常关闭（Broker 已停止，不再有新消息）时记下各房间实际的最新序号，替换预留上限
+     */
+    @PreDestroy
+    public void saveSeqs() {
+        Map<Long, Long> lastSeqs = new HashMap<>();
+        rings.forEach((roomId, ring) -> {
+            if (persisted(roomId)) {
+                lastSeqs.put(roomId, ring.lastSeq.get());
+            }
+        });
+        messageLog.saveSeqs(lastSeqs);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 追加消息并为其分配房间序号（写入 message.seq）
+     */
+    public long append(RoomMessage message) {
+        Ring ring = ring(message.getRoomId());
+        long seq = ring.append(message, ring.persisted ? this : null);
+        messageLog.append(message);
+        return seq;
+    }
+
+    // 在日志中预留 [seq, seq + seqReserve) 这一段序号
+    private long reserve(Long roomId, long seq) {
+        long upTo = seq + seqReserve - 1;
+        messageLog.reserveSeq(roomId, upTo);
+        return upTo;
+    }
+
+    /**
+     * 序号大于 afterSeq 的消息（按序号升序，最多 limit 条）
+     * 只有起点较近（落后不超过 limit 条）时才从起点往后读，缓冲区不够时从日志补齐；
+     * 首次读取（afterSeq 为 0）、起点太旧或比当前最新序号还大（服务重启后序号变化）时返回最新的 limit 条，
+     * 起点与本页之间有消息未返回时标记 gap
+     */
+    public RoomHistoryPage since(Long roomId, long afterSeq, int limit) {
+        Ring ring = ring(roomId);
+        long latest = ring.lastSeq.get();
+        if (afterSeq > latest || latest - afterSeq > limit) {
+            return latest(roomId, ring, afterSeq, limit);
+        }
+        RoomHistoryPage page = ring.since(afterSeq, Math.min(limit, capacity));
+        if (!page.gap() || !persisted(roomId)) {
+            return page;
+        }
+        List<RoomMessage> messages = messageLog.since(roomId, afterSeq, Math.min(limit, MAX_LOG_PAGE));
+        // 日志异步写入，末尾可能还没落盘，用缓冲区接上
+        long last = messages.isEmpty() ? afterSeq : messages.get(messages.size() - 1).getSeq();
+        if (messages.size() < limit) {
+            for (RoomMessage message : page.messages()) {
+                if (message.getSeq() > last && messages.size() < limit) {
+                    messages.add(message);
+                    last = message.getSeq();
+                }
+            }
+        }
+        boolean gap = messages.isEmpty() || messages.get(0).getSeq() > afterSeq + 1;
+        return new RoomHistoryPage(messages, page.latestSeq(), gap);
+    }
+
+    /**
+     * 序号小于 beforeSeq 的最后 limit 条（按序号升序），用于向前翻看更早的消息，只查日志
+     */
+    public RoomHistoryPage before(Long roomId, long beforeSeq, int limit) {
+        long latest = ring(roomId).lastSeq.get();
+        if (!persisted(roomId)) {
+            return new RoomHistoryPage(List.of(), latest, true);
+        }
+        List<RoomMessage> messages = messageLog.before(roomId, beforeSeq, Math.min(limit, MAX_LOG_PAGE));
+        return new RoomHistoryPage(messages, latest, false);
+    }
+
+    /**
+     * 房间最新序号；房间缓冲区还没创建时直接查日志，不为此创建缓冲区
+     */
+    public long latestSeq(Long roomId) {
+        Ring ring = rings.get(roomId);
+        if (ring != null) {
+            return ring.lastSeq.get();
+        }
+        return persisted(roomId) ? messageLog.lastSeq(roomId) : 0;
+    }
+
+    // 最新的 limit 条：先取缓冲区末尾，不够时从日志取更早的接在前面
+    private RoomHistoryPage latest(Long roomId, Ring ring, long afterSeq, int limit) {
+        int fromRing = Math.min(limit, capacity);
+        RoomHistoryPage tail = ring.since(Math.max(0, ring.lastSeq.get() - fromRing), fromRing);
+        long latest = tail.latestSeq();
+        List<RoomMessage> messages = tail.messages();
+        if (messages.size() < limit && persisted(roomId)) {
+            long first = messages.isEmpty() ? latest + 1 : messages.get(0).getSeq();
+            List<RoomMessage> older = messageLog.before(roomId, first, Math.min(limit - messages.size(), MAX_LOG_PAGE));
+            if (!older.isEmpty()) {
+                older.addAll(messages);
+                messages = older;
+            }
+        }
+        boolean gap = afterSeq > latest
+                || (messages.isEmpty() ? latest > afterSeq : messages.get(0).getSeq() > afterSeq + 1);
+        return new RoomHistoryPage(messages, latest, gap);
+    }
+
+    /**
+     * 把 fromRoomId 缓冲区中的消息按原顺序追加到 toRoomId（重新分配序号，正式房间同时写入日志），用于临时房间转为正式房间
+     * 临时房间只有缓冲区，超出缓冲区的更早消息已不存在
+     * @return toRoomId 复制后的最新序号
+     */
+    public long copy(Long fromRoomId, Long toRoomId) {
+        Ring source = rings.get(fromRoomId);
+        if (source != null) {
+            for (RoomMessage message : source.since(0, capacity).messages()) {
+                RoomMessage copy = new RoomMessage();
+                copy.setRoomId(toRoomId);
+                copy.setSenderId(message.getSenderId());
+                copy.setSenderName(message.getSenderName());
+                copy.setSenderAvatar(message.getSenderAvatar());
+                copy.setContent(message.getContent());
+                copy.setSendTime(message.getSendTime());
+                copy.setTimestamp(message.getTimestamp());
+                append(copy);
+            }
+        }
+        return latestSeq(toRoomId);
+    }
+
+    public void onRoomDeleted(Long roomId) {
+        rings.remove(roomId);
+        messageLog.forget(roomId);
+    }
+
+    private boolean persisted(Long roomId) {
+        return messageLog.isEnabled() && !TempRoomRegistry.isTempRoom(roomId);
+    }
+
+    // 首次使用时从日志恢复序号和最近消息
+    private Ring ring(Long roomId) {
+        return rings.computeIfAbsent(roomId, id -> {
+            Ring ring = new Ring(id, capacity, persisted(id));
+            if (ring.persisted) {
+                ring.seed(messageLog.lastSeq(id), messageLog.before(id, Long.MAX_VALUE, capacity));
+            }
+            return ring;
+        });
+    }
+
+    private static final class Ring {
+        private final Long roomId;
+        private final boolean persisted;
+        private final AtomicReferenceArray<RoomMessage> slots;
+        private final int mask;
+        private final AtomicLong lastSeq = new AtomicLong();
+        // 已在日志中预留到的序号（含），不持久化的房间不需要预留
+        private volatile long reserved;
+        // 从日志恢复时的最新序号：不超过它的序号不会再写入，槽位缺失说明该消息已丢失（崩溃或日志丢弃）
+        private long seeded;
+
+        Ring(Long roomId, int capacity, boolean persisted) {
+            this.roomId = roomId;
+            this.persisted = persisted;
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+            this.reserved = persisted ? 0 : Long.MAX_VALUE;
+        }
+
+        void seed(long lastSeq, List<RoomMessage> recent) {
+            for (RoomMessage message : recent) {
+                slots.set((int) (message.getSeq() & mask), message);
+            }
+            this.lastSeq.set(lastSeq);
+            this.reserved = lastSeq;
+            this.seeded = lastSeq;
+        }
+
+        /**
+         * 分配序号并写入槽位；超出已预留的范围时先由 history 预留下一段（同一时刻只有一个线程预留），
+         * 序号在预留落盘之后才对外可见
+         */
+        long append(RoomMessage message, RoomHistory history) {
+            long seq;
+            do {
+                seq = lastSeq.get() + 1;
+                if (seq > reserved) {
+                    synchronized (this) {
+                        if (seq > reserved) {
+                            reserved = history.reserve(roomId, seq);
+                        }
+                    }
+                }
+            } while (!lastSeq.compareAndSet(seq - 1, seq));
+            message.setSeq(seq);
+            int index = (int) (seq & mask);
+            for (;;) {
+                RoomMessage current = slots.get(index);
+                if (current != null && current.getSeq() > seq) {
+                    return seq; // 追加太慢，槽位已被更新的消息占用
+                }
+                if (slots.compareAndSet(index, current, message)) {
+                    return seq;
+                }
+            }
+        }
+
+        RoomHistoryPage since(long afterSeq, int limit) {
+            long latest = lastSeq.get();
+            boolean restarted = afterSeq > latest;
+            long from = restarted ? 1 : afterSeq + 1;
+            long oldest = Math.max(1, latest - mask);
+            boolean gap = restarted || from < oldest;
+            List<RoomMessage> messages = new ArrayList<>((int) Math.min(limit, Math.max(0, latest - from + 1)));
+            for (long seq = Math.max(from, oldest); seq <= latest && messages.size() < limit; seq++) {
+                RoomMessage message = slots.get((int) (seq & mask));
+                if (message == null || message.getSeq() < seq) {
+                    if (seq <= seeded) {
+                        gap = true; // 重启前丢失的序号
+                        continue;
+                    }
+                    break; // 该序号还在写入
+                }
+                if (message.getSeq() == seq) {
+                    messages.add(message);
+                } else {
+                    gap = true; // 读取期间已被覆盖
+                }
+            }
+            return new RoomHistoryPage(messages, latest, gap);
+        }
+    }
+}
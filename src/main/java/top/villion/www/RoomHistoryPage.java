@@ -0,0 +1,10 @@
+package top.villion.www;
+
+import java.util.List;
+
+/**
+ * 房间历史的一页：messages 按序号升序；latestSeq 为房间当前最新序号；
+ * gap 为 true 表示请求的起点之后有消息已不在缓存中（或服务重启后序号重置），客户端应清空后以本页为准
+ */
+public record RoomHistoryPage(List<RoomMessage> messages, long latestSeq, boolean gap) {
+}
@@ -0,0 +1,93 @@
+package top.villion.www;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.util.List;
+
+/**
+ * 订阅房间后补发最近消息：只发给刚订阅的会话（直接写入出站通道，带上订阅ID），格式与该订阅形式（RoomFeed）的实时消息一致
+ *
+ * 在 Broker 登记订阅之后才读取历史，期间新到的消息可能既在补发中又被实时推送，客户端按 seq 去重即可。
+ */
+@Component
+public class RoomHistoryReplayer {
+
+    // SUBSCRIBE 帧可携带的原生头：只补发序号大于该值的消息（断线重连时传最后收到的 seq）
+    static final String SINCE_HEADER = "x-since-seq";
+    // 补发帧的原生头：起点之后有消息没有补发（首次订阅或断开太久时只补发最新的一页），客户端应清空后以补发为准
+    static final String GAP_HEADER = "x-history-gap";
+
+    private final RoomHistory roomHistory;
+    private final CompactRoomPublisher compactRoomPublisher;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final MessageChannel clientOutboundChannel;
+
+    public RoomHistoryReplayer(RoomHistory roomHistory,
+                               CompactRoomPublisher compactRoomPublisher,
+                               @Lazy SimpMessagingTemplate messagingTemplate,
+                               @Lazy @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel) {
+        this.roomHistory = roomHistory;
+        this.compactRoomPublisher = compactRoomPublisher;
+        this.messagingTemplate = messagingTemplate;
+        this.clientOutboundChannel = clientOutboundChannel;
+    }
+
+    void replay(String sessionId, String subscriptionId, String destination, Long roomId, RoomFeed feed, long afterSeq) {
+        RoomHistoryPage page = roomHistory.since(roomId, afterSeq, roomHistory.capacity());
+        List<RoomMessage> history = page.messages();
+        boolean gap = page.gap();
+        if (feed.compact()) {
+            // 紧凑形式即使没有历史也要下发字典
+            send(sessionId, subscriptionId, destination, compactRoomPublisher.snapshot(roomId, history),
+                    CompactCodec.MIME_TYPE, gap);
+            return;
+        }
+        if (feed.batch()) {
+            if (!history.isEmpty()) {
+                send(sessionId, subscriptionId, destination, history, null, gap);
+            }
+        } else {
+            for (RoomMessage message : history) {
+                send(sessionId, subscriptionId, destination, message, null, gap);
+            }
+        }
+    }
+
+    static long parseSince(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void send(String sessionId, String subscriptionId, String destination, Object payload,
+                      MimeType contentType, boolean gap) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        if (contentType != null) {
+            accessor.setContentType(contentType);
+        }
+        if (gap) {
+            accessor.setNativeHeader(GAP_HEADER, "true");
+        }
+        accessor.setLeaveMutable(true);
+        Message<?> message = messagingTemplate.getMessageConverter().toMessage(payload, accessor.getMessageHeaders());
+        if (message != null) {
+            clientOutboundChannel.send(message);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package top.villion.www;
+
+import java.util.List;
+
+/**
+ * 大厅房间列表的一页（键集分页）：nextCursor 原样传回即可取下一页，为空表示没有更多
+ * 按最新排序时游标为上一页最后一个房间的 id，按人数排序时为"人数_id"
+ */
+public record RoomLobbyPage(List<RoomSummary> items, String nextCursor) {
+}
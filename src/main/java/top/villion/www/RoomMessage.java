@@ -10,4 +10,6 @@ public class RoomMessage {
     private String senderAvatar;  // 发送者头像
     private String content;       // 消息内容
     private String sendTime;      // 发送时间（前端生成）
+    private Long timestamp;       // 服务端接收时间（epoch 毫秒）
+    private Long seq;             // 房间内消息序号（从 1 递增），断线重连后按序号补齐
 }
\ No newline at end of file
@@ -0,0 +1,108 @@
+package top.villion.www;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 房间消息合并：把同一房间在一个时间窗口内（或攒够 max-batch 条）的消息合并成一帧，
+ * 以 JSON 数组发送到 /topic/rooms/{roomId}/batch（紧凑编码的客户端则是 /compact/batch），减少高峰期的帧数和写次数
+ *
+ * 客户端在 CONNECT 帧中携带 x-capabilities: room-batch 即可开启，之后订阅 /topic/rooms/{roomId}
+ * 会被改写为批量目的地（见 RoomSubscriptionInterceptor）；未开启的客户端仍逐条接收。
+ */
+@Component
+public class RoomMessageCoalescer {
+
+    private final boolean enabled;
+    private final int maxBatch;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final RoomSubscriptionRegistry roomSubscriptionRegistry;
+    private final CompactRoomPublisher compactRoomPublisher;
+
+    private final ConcurrentHashMap<Long, Batch> pending = new ConcurrentHashMap<>();
+
+    public RoomMessageCoalescer(@Value("${app.coalesce.enabled:false}") boolean enabled,
+                                @Value("${app.coalesce.max-batch:50}") int maxBatch,
+                                @Lazy SimpMessagingTemplate messagingTemplate,
+                                RoomSubscriptionRegistry roomSubscriptionRegistry,
+                                CompactRoomPublisher compactRoomPublisher) {
+        this.enabled = enabled;
+        this.maxBatch = maxBatch;
+        this.messagingTemplate = messagingTemplate;
+        this.roomSubscriptionRegistry = roomSubscriptionRegistry;
+        this.compactRoomPublisher = compactRoomPublisher;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 把消息放入房间的待发批次；房间没有批量订阅者时直接忽略
+     */
+    public void offer(RoomMessage message) {
+        Long roomId = message.getRoomId();
+        if (!enabled || !(roomSubscriptionRegistry.hasSubscribers(roomId, RoomFeed.JSON_BATCH)
+                || roomSubscriptionRegistry.hasSubscribers(roomId, RoomFeed.COMPACT_BATCH))) {
+            return;
+        }
+        for (;;) {
+            Batch batch = pending.computeIfAbsent(roomId, id -> new Batch());
+            // 在批次锁内发送，保证同一房间的批次按顺序投递
+            synchronized (batch) {
+                if (batch.retired) {
+                    continue; // 批次刚被清理线程移除，重新获取
+                }
+                batch.messages.add(message);
+                if (batch.messages.size() >= maxBatch) {
+                    send(roomId, batch.drain());
+                }
+            }
+            return;
+        }
+    }
+
+    /**
+     * 按窗口发送所有未满的批次；空闲的批次顺便移除
+     */
+    @Scheduled(fixedDelayString = "${app.coalesce.window-ms:30}")
+    public void flush() {
+        for (Map.Entry<Long, Batch> entry : pending.entrySet()) {
+            Batch batch = entry.getValue();
+            synchronized (batch) {
+                if (batch.messages.isEmpty()) {
+                    batch.retired = true;
+                    pending.remove(entry.getKey(), batch);
+                } else {
+                    send(entry.getKey(), batch.drain());
+                }
+            }
+        }
+    }
+
+    private void send(Long roomId, List<RoomMessage> messages) {
+        if (roomSubscriptionRegistry.hasSubscribers(roomId, RoomFeed.JSON_BATCH)) {
+            messagingTemplate.convertAndSend(RoomFeed.JSON_BATCH.destination(roomId), messages);
+        }
+        compactRoomPublisher.publish(RoomFeed.COMPACT_BATCH, roomId, messages);
+    }
+
+    private static final class Batch {
+        List<RoomMessage> messages = new ArrayList<>();
+        boolean retired;
+
+        List<RoomMessage> drain() {
+            List<RoomMessage> drained = messages;
+            messages = new ArrayList<>(drained.size());
+            return drained;
+        }
+    }
+}
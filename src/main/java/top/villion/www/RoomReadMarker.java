@@ -0,0 +1,29 @@
+package top.villion.www;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * 已读位置：用户在房间内已读到的消息序号（RoomMessage.seq）
+ * 由 ReadMarkers 在内存中维护并定时批量写入，这里只用于建表
+ */
+@Entity
+@Table(name = "room_read_markers",
+        uniqueConstraints = @UniqueConstraint(name = "uk_read_markers_user_room",
+                columnNames = {"user_id", "room_id"}),
+        indexes = @Index(name = "idx_read_markers_room", columnList = "room_id"))
+@Data
+public class RoomReadMarker {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "room_id", nullable = false)
+    private Long roomId;
+
+    @Column(name = "last_read_seq", nullable = false)
+    private Long lastReadSeq;
+}
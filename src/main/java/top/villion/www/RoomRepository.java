@@ -1,10 +1,72 @@
 package top.villion.www;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface RoomRepository extends JpaRepository<Room, Long> {
     List<Room> findByNameContainingIgnoreCase(String keyword);
+
+    // 大厅列表（键集分页）：按最新，id 小于上一页最后一个
+    @Query("select new top.villion.www.RoomSummary(r.id, r.name, r.description, r.maxCapacity, r.memberCount, r.createdAt) "
+            + "from Room r where r.id < ?1 order by r.id desc")
+    List<RoomSummary> findSummariesBefore(Long beforeId, Pageable pageable);
+
+    // 大厅列表（键集分页）：按人数，(member_count, id) 小于上一页最后一个，走 idx_rooms_member_count
+    @Query("select new top.villion.www.RoomSummary(r.id, r.name, r.description, r.maxCapacity, r.memberCount, r.createdAt) "
+            + "from Room r where r.memberCount < ?1 or (r.memberCount = ?1 and r.id < ?2) "
+            + "order by r.memberCount desc, r.id desc")
+    List<RoomSummary> findSummariesByOccupancyBefore(int memberCount, Long beforeId, Pageable pageable);
+
+    @Query("select new top.villion.www.RoomSummary(r.id, r.name, r.description, r.maxCapacity, r.memberCount, r.createdAt) "
+            + "from Room r where r.id = ?1")
+    Optional<RoomSummary> findSummaryById(Long id);
+
+    // 按 id 分页读取搜索字段，用于构建房间搜索索引：[id, name, description]
+    @Query("select r.id, r.name, r.description from Room r where r.id > ?1 order by r.id")
+    List<Object[]> findSearchFieldsAfter(Long afterId, Pageable pageable);
+
+    @Query("select m.id from Room r join r.members m where r.id = ?1")
+    List<Long> findMemberIds(Long roomId);
+
+    // 占座：单条条件更新，容量不足时影响行数为0
+    @Modifying
+    @Query("update Room r set r.memberCount = r.memberCount + ?2 where r.id = ?1 and r.memberCount + ?2 <= r.maxCapacity")
+    int tryReserveSeats(Long roomId, int seats);
+
+    @Modifying
+    @Query("update Room r set r.memberCount = r.memberCount - ?2 where r.id = ?1 and r.memberCount >= ?2")
+    int releaseSeats(Long roomId, int seats);
+
+    // 修改房间信息：只写这三列（参数为空时保持原值），不覆盖并发占座后的 member_count；新容量小于当前人数时影响行数为0
+    @Modifying
+    @Query("update Room r set r.name = coalesce(?2, r.name), r.description = coalesce(?3, r.description), "
+            + "r.maxCapacity = coalesce(?4, r.maxCapacity) "
+            + "where r.id = ?1 and r.memberCount <= coalesce(?4, r.maxCapacity)")
+    int updateDetails(Long roomId, String name, String description, Integer maxCapacity);
+
+    @Query(value = "select user_id from room_members where room_id = ?1 and user_id in ?2", nativeQuery = true)
+    List<Long> findExistingMemberIds(Long roomId, Collection<Long> userIds);
+
+    @Query(value = "select room_id from room_members where user_id = ?1", nativeQuery = true)
+    List<Long> findRoomIdsByMemberId(Long userId);
+
+    @Modifying
+    @Query(value = "insert into room_members (room_id, user_id) values (?1, ?2)", nativeQuery = true)
+    int insertMember(Long roomId, Long userId);
+
+    @Modifying
+    @Query(value = "delete from room_members where room_id = ?1 and user_id in ?2", nativeQuery = true)
+    int deleteMembers(Long roomId, Collection<Long> userIds);
+
+    // 按 room_members 重新计算所有房间的成员数
+    @Modifying
+    @Query(value = "update rooms r set member_count = (select count(*) from room_members m where m.room_id = r.id)", nativeQuery = true)
+    int recountMembers();
 }
@@ -0,0 +1,7 @@
+package top.villion.www;
+
+/**
+ * 房间搜索结果
+ */
+public record RoomSearchHit(Long id, String name, String description, int score) {
+}
@@ -0,0 +1,200 @@
+package top.villion.www;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 房间名称/简介的 n-gram 倒排索引，替代 LIKE '%kw%' 全表扫描
+ *
+ * 索引 2-gram 和 3-gram；中日韩字符单字即有意义，额外索引 1-gram。
+ * 查询时取关键词的最长 gram 求倒排交集，再用原文校验并打分，去掉 gram 拼接造成的误命中。
+ * 倒排表为写时复制的有序 long[]，读无锁；写操作串行（房间增删改频率很低）。
+ */
+@Component
+public class RoomSearchIndex {
+
+    private static final int MAX_GRAM = 3;
+    private static final int LOAD_PAGE_SIZE = 5_000;
+
+    private final RoomRepository roomRepository;
+
+    // gram -> 房间ID（有序）
+    private final ConcurrentHashMap<String, long[]> postings = new ConcurrentHashMap<>();
+    // 房间ID -> 归一化后的文本
+    private final ConcurrentHashMap<Long, Doc> docs = new ConcurrentHashMap<>();
+
+    public RoomSearchIndex(RoomRepository roomRepository) {
+        this.roomRepository = roomRepository;
+    }
+
+    @PostConstruct
+    public void load() {
+        long lastId = 0;
+        List<Object[]> page;
+        do {
+            page = roomRepository.findSearchFieldsAfter(lastId, PageRequest.ofSize(LOAD_PAGE_SIZE));
+            for (Object[] row : page) {
+                lastId = (Long) row[0];
+                index(lastId, (String) row[1], (String) row[2]);
+            }
+        } while (page.size() == LOAD_PAGE_SIZE);
+    }
+
+    /**
+     * 新增或更新房间的索引
+     */
+    public synchronized void index(Long roomId, String name, String description) {
+        Doc doc = new Doc(roomId, name, description, normalize(name), normalize(description));
+        Doc old = docs.put(roomId, doc);
+        Set<String> oldGrams = old == null ? Collections.emptySet() : grams(old);
+        Set<String> newGrams = grams(doc);
+        for (String gram : oldGrams) {
+            if (!newGrams.contains(gram)) {
+                postings.computeIfPresent(gram, (g, ids) -> emptyToNull(SortedLongArrays.remove(ids, roomId)));
+            }
+        }
+        for (String gram : newGrams) {
+            if (!oldGrams.contains(gram)) {
+                postings.merge(gram, new long[]{roomId}, (ids, v) -> SortedLongArrays.insert(ids, roomId));
+            }
+        }
+    }
+
+    public synchronized void remove(Long roomId) {
+        Doc old = docs.remove(roomId);
+        if (old == null) {
+            return;
+        }
+        for (String gram : grams(old)) {
+            postings.computeIfPresent(gram, (g, ids) -> emptyToNull(SortedLongArrays.remove(ids, roomId)));
+        }
+    }
+
+    /**
+     * 前缀/包含搜索，按相关度排序
+     * 排序：名称完全匹配 > 名称前缀 > 名称包含（越靠前越好） > 仅简介包含；同分时名称短、房间新的优先
+     */
+    public List<RoomSearchHit> search(String keyword, int limit) {
+        String q = normalize(keyword);
+        if (q.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        long[] candidates = candidates(q);
+        if (candidates.length == 0) {
+            return Collections.emptyList();
+        }
+
+        List<RoomSearchHit> hits = new ArrayList<>();
+        for (long id : candidates) {
+            Doc doc = docs.get(id);
+            if (doc == null) {
+                continue;
+            }
+            int score = score(doc, q);
+            if (score > 0) {
+                hits.add(new RoomSearchHit(doc.id, doc.name, doc.description, score));
+            }
+        }
+        hits.sort(Comparator.comparingInt(RoomSearchHit::score).reversed()
+                .thenComparingInt(h -> h.name().length())
+                .thenComparing(RoomSearchHit::id, Comparator.reverseOrder()));
+        return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+    }
+
+    public int size() {
+        return docs.size();
+    }
+
+    // 取关键词中最长可用的 gram，按倒排表长度从小到大求交集
+    private long[] candidates(String q) {
+        int[] cps = q.codePoints().toArray();
+        int n = Math.min(MAX_GRAM, cps.length);
+        if (n == 1 && !isCjk(cps[0])) {
+            return SortedLongArrays.EMPTY; // 单个拉丁字母没有检索意义
+        }
+        List<long[]> lists = new ArrayList<>();
+        for (int i = 0; i + n <= cps.length; i++) {
+            long[] ids = postings.get(new String(cps, i, n));
+            if (ids == null) {
+                return SortedLongArrays.EMPTY;
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(a -> a.length));
+        long[] result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = SortedLongArrays.intersect(result, lists.get(i));
+        }
+        return result;
+    }
+
+    private static int score(Doc doc, String q) {
+        if (doc.normName.equals(q)) {
+            return 100;
+        }
+        if (doc.normName.startsWith(q)) {
+            return 80;
+        }
+        int at = doc.normName.indexOf(q);
+        if (at >= 0) {
+            return 60 - Math.min(at, 20);
+        }
+        return doc.normDescription.contains(q) ? 20 : 0;
+    }
+
+    private static Set<String> grams(Doc doc) {
+        Set<String> grams = new HashSet<>();
+        addGrams(doc.normName, grams);
+        addGrams(doc.normDescription, grams);
+        return grams;
+    }
+
+    private static void addGrams(String text, Set<String> grams) {
+        int[] cps = text.codePoints().toArray();
+        for (int i = 0; i < cps.length; i++) {
+            if (isCjk(cps[i])) {
+                grams.add(new String(cps, i, 1));
+            }
+            for (int n = 2; n <= MAX_GRAM && i + n <= cps.length; n++) {
+                grams.add(new String(cps, i, n));
+            }
+        }
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    // 全角转半角、统一小写、合并空白
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return Normalizer.normalize(text, Normalizer.Form.NFKC)
+                .toLowerCase(Locale.ROOT)
+                .trim()
+                .replaceAll("\\s+", " ");
+    }
+
+    private static long[] emptyToNull(long[] ids) {
+        return ids.length == 0 ? null : ids;
+    }
+
+    private record Doc(Long id, String name, String description, String normName, String normDescription) {
+    }
+}
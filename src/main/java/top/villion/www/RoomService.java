@@ -1,12 +1,19 @@
 package top.villion.www;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface RoomService {
     Room createRoom(Room room, Long userId);
     List<Room> getAllRooms();
+    RoomLobbyPage getRoomSummaries(String sort, String cursor, int size);
     Optional<Room> getRoomById(Long id);
+    RoomSummary updateRoom(Long id, Room updateData);
+    void deleteRoom(Long id);
+    List<RoomSearchHit> searchRooms(String keyword, int limit);
     Room joinRoom(Long roomId, Long userId);
     Room leaveRoom(Long roomId, Long userId);
+    int joinRoomBatch(Long roomId, Collection<Long> userIds);
+    int leaveRoomBatch(Long roomId, Collection<Long> userIds);
 }
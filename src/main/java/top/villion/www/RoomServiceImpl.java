@@ -1,61 +1,230 @@
 package top.villion.www;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
 public class RoomServiceImpl implements RoomService {
 
+    // 大厅排序：occupancy=按人数，recent=按创建时间（默认）
+    public static final String SORT_OCCUPANCY = "occupancy";
+    public static final String SORT_RECENT = "recent";
+
     private final RoomRepository roomRepository;
-    private final UserRepository userRepository;
+    private final UserProfileCache userProfileCache;
+    private final RoomSubscriptionRegistry roomSubscriptionRegistry;
+    private final RoomSearchIndex roomSearchIndex;
+    private final AppMetrics appMetrics;
+    private final CompactRoomPublisher compactRoomPublisher;
+    private final RoomHistory roomHistory;
+    private final ReadMarkers readMarkers;
+
+    @Value("${room.recount-members-on-startup:true}")
+    private boolean recountMembersOnStartup;
 
     @Override
     public Room createRoom(Room room, Long userId) {
         room.setCreatedBy(userId);
-        return roomRepository.save(room);
+        room.setMemberCount(0);
+        Room saved = roomRepository.save(room);
+        TransactionHooks.afterCommit(() -> roomSearchIndex.index(saved.getId(), saved.getName(), saved.getDescription()));
+        return saved;
     }
 
     @Override
+    @Transactional(readOnly = true)
     public List<Room> getAllRooms() {
         return roomRepository.findAll();
     }
 
+    /**
+     * 大厅房间摘要（键集分页），一次查询返回，不触碰成员集合
+     * 人数随加入/离开变化，按人数翻页期间房间可能换位置（漏看或重复），与按页码翻页相同，但不再扫描前面所有页
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public RoomLobbyPage getRoomSummaries(String sort, String cursor, int size) {
+        PageRequest limit = PageRequest.ofSize(size);
+        boolean occupancy = SORT_OCCUPANCY.equals(sort);
+        List<RoomSummary> rooms;
+        try {
+            if (cursor == null || cursor.isBlank()) {
+                rooms = occupancy
+                        ? roomRepository.findSummariesByOccupancyBefore(Integer.MAX_VALUE, Long.MAX_VALUE, limit)
+                        : roomRepository.findSummariesBefore(Long.MAX_VALUE, limit);
+            } else if (occupancy) {
+                int sep = cursor.indexOf('_');
+                rooms = roomRepository.findSummariesByOccupancyBefore(Integer.parseInt(cursor.substring(0, sep)),
+                        Long.valueOf(cursor.substring(sep + 1)), limit);
+            } else {
+                rooms = roomRepository.findSummariesBefore(Long.valueOf(cursor), limit);
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("游标无效");
+        }
+        if (rooms.size() < size) {
+            return new RoomLobbyPage(rooms, null);
+        }
+        RoomSummary last = rooms.get(rooms.size() - 1);
+        return new RoomLobbyPage(rooms, occupancy ? last.getMemberCount() + "_" + last.getId() : last.getId().toString());
+    }
+
     @Override
+    @Transactional(readOnly = true)
     public Optional<Room> getRoomById(Long id) {
         return roomRepository.findById(id);
     }
 
+    /**
+     * 更新房间名称/简介/容量（只更新非空字段）
+     * 单条条件更新，不加载实体再整体保存，避免覆盖并发加入/离开修改的 member_count
+     */
+    @Override
+    @Transactional
+    public RoomSummary updateRoom(Long id, Room updateData) {
+        String name = updateData.getName() != null && !updateData.getName().trim().isEmpty()
+                ? updateData.getName().trim() : null;
+        Integer maxCapacity = updateData.getMaxCapacity() != null && updateData.getMaxCapacity() > 0
+                ? updateData.getMaxCapacity() : null;
+        int updated = roomRepository.updateDetails(id, name, updateData.getDescription(), maxCapacity);
+        RoomSummary saved = roomRepository.findSummaryById(id)
+                .orElseThrow(() -> new RuntimeException("房间不存在"));
+        if (updated == 0) {
+            throw new ConflictException("容量不能小于当前人数（" + saved.getMemberCount() + "）");
+        }
+        TransactionHooks.afterCommit(() -> roomSearchIndex.index(saved.getId(), saved.getName(), saved.getDescription()));
+        return saved;
+    }
+
+    @Override
+    @Transactional
+    public void deleteRoom(Long id) {
+        if (!roomRepository.existsById(id)) {
+            throw new RuntimeException("房间不存在");
+        }
+        roomRepository.deleteById(id);
+        TransactionHooks.afterCommit(() -> {
+            roomSearchIndex.remove(id);
+            roomSubscriptionRegistry.onRoomDeleted(id);
+            compactRoomPublisher.onRoomDeleted(id);
+            roomHistory.onRoomDeleted(id);
+            readMarkers.onRoomDeleted(id);
+        });
+    }
+
+    @Override
+    public List<RoomSearchHit> searchRooms(String keyword, int limit) {
+        return roomSearchIndex.search(keyword, limit);
+    }
+
+    /**
+     * 加入房间：不加载成员集合，通过 member_count 条件更新原子占座
+     */
     @Override
     @Transactional
     public Room joinRoom(Long roomId, Long userId) {
-        Room room = roomRepository.findById(roomId)
+        joinRoomBatch(roomId, List.of(userId));
+        return roomRepository.findById(roomId)
                 .orElseThrow(() -> new RuntimeException("房间不存在"));
+    }
 
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("用户不存在"));
+    @Override
+    @Transactional
+    public Room leaveRoom(Long roomId, Long userId) {
+        if (!userProfileCache.exists(userId)) {
+            throw new RuntimeException("用户不存在");
+        }
+        leaveRoomBatch(roomId, List.of(userId));
+        return roomRepository.findById(roomId)
+                .orElseThrow(() -> new RuntimeException("房间不存在"));
+    }
+
+    /**
+     * 批量加入：已是成员的用户忽略；剩余用户要么全部加入，要么因容量不足全部失败
+     * @return 新加入的人数
+     */
+    @Override
+    @Transactional
+    public int joinRoomBatch(Long roomId, Collection<Long> userIds) {
+        Set<Long> ids = new LinkedHashSet<>(userIds);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        if (!userProfileCache.existsAll(ids)) {
+            throw new RuntimeException("用户不存在");
+        }
+
+        ids.removeAll(roomRepository.findExistingMemberIds(roomId, ids));
+        if (ids.isEmpty()) {
+            return 0;
+        }
 
-        if (room.getMembers().size() >= room.getMaxCapacity()) {
+        if (roomRepository.tryReserveSeats(roomId, ids.size()) == 0) {
+            if (!roomRepository.existsById(roomId)) {
+                throw new RuntimeException("房间不存在");
+            }
+            appMetrics.roomFull();
             throw new RuntimeException("房间已满");
         }
+        // room_members 主键冲突（并发重复加入）会回滚整个事务，包括占座
+        for (Long id : ids) {
+            roomRepository.insertMember(roomId, id);
+        }
 
-        room.getMembers().add(user);
-        return roomRepository.save(room);
+        TransactionHooks.afterCommit(() -> ids.forEach(id -> {
+            roomSubscriptionRegistry.onJoin(roomId, id);
+            readMarkers.onJoin(roomId, id);
+        }));
+        return ids.size();
     }
 
+    /**
+     * 批量离开：不是成员的用户忽略
+     * @return 实际离开的人数
+     */
     @Override
     @Transactional
-    public Room leaveRoom(Long roomId, Long userId) {
-        Room room = roomRepository.findById(roomId)
-                .orElseThrow(() -> new RuntimeException("房间不存在"));
+    public int leaveRoomBatch(Long roomId, Collection<Long> userIds) {
+        Set<Long> ids = new LinkedHashSet<>(userIds);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        List<Long> present = roomRepository.findExistingMemberIds(roomId, ids);
+        if (present.isEmpty()) {
+            return 0;
+        }
 
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("用户不存在"));
+        int removed = roomRepository.deleteMembers(roomId, present);
+        if (removed > 0) {
+            roomRepository.releaseSeats(roomId, removed);
+        }
+
+        TransactionHooks.afterCommit(() -> present.forEach(id -> {
+            roomSubscriptionRegistry.onLeave(roomId, id);
+            readMarkers.onLeave(roomId, id);
+        }));
+        return removed;
+    }
 
-        room.getMembers().remove(user);
-        return roomRepository.save(room);
+    /**
+     * 启动时按 room_members 校准成员计数（兼容新增 member_count 列之前的数据）
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void recountMembers() {
+        if (recountMembersOnStartup) {
+            roomRepository.recountMembers();
+        }
     }
 }
@@ -0,0 +1,155 @@
+package top.villion.www;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.user.UserDestinationMessageHandler;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * 入站通道拦截器：只允许房间成员订阅 /topic/rooms/{roomId}（包括已读回执 /topic/rooms/{roomId}/receipts）
+ * /topic/rooms/ 下解析不出房间号的订阅和任何通配符订阅一律拒绝
+ *
+ * 会话身份由 UserIdHandshakeHandler / PresenceChannelInterceptor 绑定；
+ * 按 CONNECT 时声明的能力（ClientCapabilities）把房间订阅改写为批量/紧凑目的地（见 RoomFeed），
+ * 匹配结果订阅 /user/queue/match 同理改写为紧凑目的地，并按编码登记到 MatchSubscriptions。
+ * Broker 登记房间订阅之后补发最近消息（RoomHistoryReplayer）；Broker 登记私信订阅 /user/queue/dm 之后
+ * 登记到 DmSubscriptions，再推送收件箱中的私信
+ */
+@Component
+public class RoomSubscriptionInterceptor implements ExecutorChannelInterceptor {
+
+    private static final String USER_MATCH_DESTINATION = "/user" + ChatController.MATCH_QUEUE;
+    private static final String USER_COMPACT_MATCH_DESTINATION = USER_MATCH_DESTINATION + CompactCodec.DESTINATION_SUFFIX;
+
+    private final RoomSubscriptionRegistry registry;
+    private final RoomMessageCoalescer coalescer;
+    private final CompactRoomPublisher compactRoomPublisher;
+    private final RoomHistoryReplayer roomHistoryReplayer;
+    private final DirectMessageService directMessageService;
+    private final MatchSubscriptions matchSubscriptions;
+    private final DmSubscriptions dmSubscriptions;
+
+    public RoomSubscriptionInterceptor(RoomSubscriptionRegistry registry, RoomMessageCoalescer coalescer,
+                                       CompactRoomPublisher compactRoomPublisher,
+                                       RoomHistoryReplayer roomHistoryReplayer,
+                                       DirectMessageService directMessageService,
+                                       MatchSubscriptions matchSubscriptions,
+                                       DmSubscriptions dmSubscriptions) {
+        this.registry = registry;
+        this.coalescer = coalescer;
+        this.compactRoomPublisher = compactRoomPublisher;
+        this.roomHistoryReplayer = roomHistoryReplayer;
+        this.directMessageService = directMessageService;
+        this.matchSubscriptions = matchSubscriptions;
+        this.dmSubscriptions = dmSubscriptions;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+
+        switch (accessor.getCommand()) {
+            case CONNECT -> ClientCapabilities.record(accessor);
+            case SUBSCRIBE -> {
+                // SimpleBroker 把订阅目的地当作 Ant 模式匹配，/topic/** 之类的订阅能收到所有房间的消息，一律拒绝
+                if (isPattern(accessor.getDestination())) {
+                    throw new MessagingException(message, "不支持通配符订阅：" + accessor.getDestination());
+                }
+                if (USER_MATCH_DESTINATION.equals(accessor.getDestination()) && compact(accessor)) {
+                    accessor.setDestination(USER_COMPACT_MATCH_DESTINATION);
+                }
+                if (USER_MATCH_DESTINATION.equals(accessor.getDestination())
+                        || USER_COMPACT_MATCH_DESTINATION.equals(accessor.getDestination())) {
+                    Long userId = UserPrincipal.userIdOf(accessor.getUser());
+                    if (userId != null) {
+                        matchSubscriptions.add(accessor.getSessionId(), accessor.getSubscriptionId(), userId,
+                                USER_COMPACT_MATCH_DESTINATION.equals(accessor.getDestination()));
+                    }
+                    return message;
+                }
+                if (accessor.getDestination() != null
+                        && accessor.getDestination().startsWith(RoomSubscriptionRegistry.ROOM_TOPIC_PREFIX)) {
+                    Long roomId = RoomSubscriptionRegistry.parseRoomId(accessor.getDestination());
+                    if (roomId == null) {
+                        throw new MessagingException(message, "无效的房间订阅：" + accessor.getDestination());
+                    }
+                    Long userId = UserPrincipal.userIdOf(accessor.getUser());
+                    if (!registry.isMember(roomId, userId)) {
+                        throw new MessagingException(message, "不是房间成员，无法订阅房间 " + roomId);
+                    }
+                    if (RoomSubscriptionRegistry.isReceiptsDestination(accessor.getDestination())) {
+                        registry.addSubscription(accessor.getSessionId(), accessor.getSubscriptionId(), userId, roomId, null);
+                        return message;
+                    }
+                    // 直接订阅了某种形式的目的地时保持不变，否则按会话能力改写
+                    RoomFeed feed = RoomFeed.fromDestination(accessor.getDestination());
+                    if (feed == RoomFeed.JSON) {
+                        feed = RoomFeed.of(compact(accessor),
+                                coalescer.isEnabled() && ClientCapabilities.has(accessor, ClientCapabilities.ROOM_BATCH));
+                        accessor.setDestination(feed.destination(roomId));
+                    }
+                    registry.addSubscription(accessor.getSessionId(), accessor.getSubscriptionId(), userId, roomId, feed);
+                }
+            }
+            case UNSUBSCRIBE -> {
+                registry.removeSubscription(accessor.getSessionId(), accessor.getSubscriptionId());
+                matchSubscriptions.remove(accessor.getSessionId(), accessor.getSubscriptionId());
+                dmSubscriptions.remove(accessor.getSessionId(), accessor.getSubscriptionId());
+            }
+            default -> {
+            }
+        }
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler,
+                                    Exception ex) {
+        if (ex != null) {
+            return;
+        }
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() != StompCommand.SUBSCRIBE) {
+            return;
+        }
+        // /user 目的地由 UserDestinationMessageHandler 解析为会话专属目的地后同步交给 Broker
+        if (handler instanceof UserDestinationMessageHandler
+                && DirectMessageService.USER_DM_DESTINATION.equals(accessor.getDestination())) {
+            Long userId = UserPrincipal.userIdOf(accessor.getUser());
+            if (userId != null) {
+                // 先登记再取收件箱：之后发来的私信直接推送，之前进收件箱的由这里取走
+                dmSubscriptions.add(accessor.getSessionId(), accessor.getSubscriptionId(), userId);
+                directMessageService.deliverInbox(userId);
+            }
+            return;
+        }
+        if (!(handler instanceof AbstractBrokerMessageHandler)) {
+            return;
+        }
+        Long roomId = RoomSubscriptionRegistry.parseRoomId(accessor.getDestination());
+        if (roomId != null && !RoomSubscriptionRegistry.isReceiptsDestination(accessor.getDestination())) {
+            roomHistoryReplayer.replay(accessor.getSessionId(), accessor.getSubscriptionId(), accessor.getDestination(),
+                    roomId, RoomFeed.fromDestination(accessor.getDestination()),
+                    RoomHistoryReplayer.parseSince(accessor.getFirstNativeHeader(RoomHistoryReplayer.SINCE_HEADER)));
+        }
+    }
+
+    private static boolean isPattern(String destination) {
+        return destination != null
+                && (destination.indexOf('*') >= 0 || destination.indexOf('?') >= 0 || destination.indexOf('{') >= 0);
+    }
+
+    private boolean compact(StompHeaderAccessor accessor) {
+        return compactRoomPublisher.isEnabled() && ClientCapabilities.has(accessor, ClientCapabilities.COMPACT);
+    }
+}
@@ -0,0 +1,213 @@
+package top.villion.www;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 房间订阅登记：维护房间成员缓存和 /topic/rooms/{roomId} 的订阅关系
+ *
+ * 成员缓存按需从数据库加载，之后由 joinRoom/leaveRoom 增量更新（临时房间的成员直接取自 TempRoomRegistry）；
+ * 用户离开房间时，同步从 Broker 中移除该用户在此房间的订阅。
+ */
+@Component
+public class RoomSubscriptionRegistry {
+
+    public static final String ROOM_TOPIC_PREFIX = "/topic/rooms/";
+    // 已读回执：/topic/rooms/{roomId}/receipts，与消息订阅一样只允许房间成员订阅
+    public static final String RECEIPTS_SUFFIX = "/receipts";
+
+    private final RoomRepository roomRepository;
+    private final TempRoomRegistry tempRoomRegistry;
+    private final MessageChannel brokerChannel;
+
+    // roomId -> 成员ID
+    private final ConcurrentHashMap<Long, Set<Long>> membersByRoom = new ConcurrentHashMap<>();
+    // roomId -> 该房间的订阅
+    private final ConcurrentHashMap<Long, Set<Subscription>> subscriptionsByRoom = new ConcurrentHashMap<>();
+    // sessionId -> 该会话的房间订阅
+    private final ConcurrentHashMap<String, Set<Subscription>> subscriptionsBySession = new ConcurrentHashMap<>();
+    // roomId -> 各订阅形式（RoomFeed）的订阅数
+    private final ConcurrentHashMap<Long, AtomicIntegerArray> feedSubscribers = new ConcurrentHashMap<>();
+
+    public RoomSubscriptionRegistry(RoomRepository roomRepository,
+                                    TempRoomRegistry tempRoomRegistry,
+                                    @Lazy @Qualifier("brokerChannel") MessageChannel brokerChannel) {
+        this.roomRepository = roomRepository;
+        this.tempRoomRegistry = tempRoomRegistry;
+        this.brokerChannel = brokerChannel;
+    }
+
+    public static String destination(Long roomId) {
+        return ROOM_TOPIC_PREFIX + roomId;
+    }
+
+    public static String receiptsDestination(Long roomId) {
+        return ROOM_TOPIC_PREFIX + roomId + RECEIPTS_SUFFIX;
+    }
+
+    public static boolean isReceiptsDestination(String destination) {
+        return destination != null && destination.startsWith(ROOM_TOPIC_PREFIX) && destination.endsWith(RECEIPTS_SUFFIX);
+    }
+
+    /**
+     * 从目的地（任一订阅形式，见 RoomFeed，或已读回执）解析房间ID，不是房间目的地时返回 null
+     */
+    public static Long parseRoomId(String destination) {
+        if (destination == null || !destination.startsWith(ROOM_TOPIC_PREFIX)) {
+            return null;
+        }
+        int end = destination.length() - (isReceiptsDestination(destination)
+                ? RECEIPTS_SUFFIX.length() : RoomFeed.fromDestination(destination).suffix.length());
+        try {
+            return Long.valueOf(destination.substring(ROOM_TOPIC_PREFIX.length(), end));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public boolean isMember(Long roomId, Long userId) {
+        if (roomId == null || userId == null) {
+            return false;
+        }
+        // 临时房间只在内存中，不查数据库
+        if (TempRoomRegistry.isTempRoom(roomId)) {
+            return tempRoomRegistry.isMember(roomId, userId);
+        }
+        Set<Long> members = membersByRoom.get(roomId);
+        if (members != null && members.contains(userId)) {
+            return true;
+        }
+        // 缓存未命中或可能过期时，以数据库为准重新加载一次
+        return reload(roomId).contains(userId);
+    }
+
+    public void onJoin(Long roomId, Long userId) {
+        membersByRoom.computeIfPresent(roomId, (id, members) -> {
+            members.add(userId);
+            return members;
+        });
+    }
+
+    public void onLeave(Long roomId, Long userId) {
+        membersByRoom.computeIfPresent(roomId, (id, members) -> {
+            members.remove(userId);
+            return members;
+        });
+        Set<Subscription> subs = subscriptionsByRoom.get(roomId);
+        if (subs == null) {
+            return;
+        }
+        for (Subscription sub : subs) {
+            if (sub.userId.equals(userId)) {
+                removeSubscription(sub);
+                unsubscribeFromBroker(sub);
+            }
+        }
+    }
+
+    boolean hasSubscribers(Long roomId, RoomFeed feed) {
+        AtomicIntegerArray counts = feedSubscribers.get(roomId);
+        return counts != null && counts.get(feed.ordinal()) > 0;
+    }
+
+    /**
+     * 房间成员ID（缓存未加载时从数据库加载）
+     */
+    Set<Long> memberIds(Long roomId) {
+        if (TempRoomRegistry.isTempRoom(roomId)) {
+            return tempRoomRegistry.memberIds(roomId);
+        }
+        Set<Long> members = membersByRoom.get(roomId);
+        return members != null ? members : reload(roomId);
+    }
+
+    public void onRoomDeleted(Long roomId) {
+        membersByRoom.remove(roomId);
+        feedSubscribers.remove(roomId);
+        Set<Subscription> subs = subscriptionsByRoom.remove(roomId);
+        if (subs != null) {
+            for (Subscription sub : subs) {
+                removeSubscription(sub);
+                unsubscribeFromBroker(sub);
+            }
+        }
+    }
+
+    // feed 为 null 表示已读回执订阅，不计入各订阅形式的订阅数
+    void addSubscription(String sessionId, String subscriptionId, Long userId, Long roomId, RoomFeed feed) {
+        Subscription sub = new Subscription(sessionId, subscriptionId, userId, roomId, feed);
+        if (subscriptionsByRoom.computeIfAbsent(roomId, id -> ConcurrentHashMap.newKeySet()).add(sub) && feed != null) {
+            feedSubscribers.computeIfAbsent(roomId, id -> new AtomicIntegerArray(RoomFeed.values().length))
+                    .incrementAndGet(feed.ordinal());
+        }
+        subscriptionsBySession.computeIfAbsent(sessionId, id -> ConcurrentHashMap.newKeySet()).add(sub);
+    }
+
+    void removeSubscription(String sessionId, String subscriptionId) {
+        Set<Subscription> subs = subscriptionsBySession.get(sessionId);
+        if (subs == null) {
+            return;
+        }
+        for (Subscription sub : subs) {
+            if (sub.subscriptionId.equals(subscriptionId)) {
+                removeSubscription(sub);
+            }
+        }
+    }
+
+    void removeSession(String sessionId) {
+        Set<Subscription> subs = subscriptionsBySession.remove(sessionId);
+        if (subs == null) {
+            return;
+        }
+        for (Subscription sub : subs) {
+            removeFromRoom(sub);
+        }
+    }
+
+    private void removeSubscription(Subscription sub) {
+        removeFromRoom(sub);
+        Set<Subscription> sessionSubs = subscriptionsBySession.get(sub.sessionId);
+        if (sessionSubs != null) {
+            sessionSubs.remove(sub);
+        }
+    }
+
+    private void removeFromRoom(Subscription sub) {
+        Set<Subscription> roomSubs = subscriptionsByRoom.get(sub.roomId);
+        if (roomSubs != null && roomSubs.remove(sub) && sub.feed != null) {
+            AtomicIntegerArray counts = feedSubscribers.get(sub.roomId);
+            if (counts != null) {
+                counts.decrementAndGet(sub.feed.ordinal());
+            }
+        }
+    }
+
+    private Set<Long> reload(Long roomId) {
+        Set<Long> members = ConcurrentHashMap.newKeySet();
+        members.addAll(roomRepository.findMemberIds(roomId));
+        membersByRoom.put(roomId, members);
+        return members;
+    }
+
+    // 以 UNSUBSCRIBE 消息的形式通知 SimpleBroker 删除订阅
+    private void unsubscribeFromBroker(Subscription sub) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+        accessor.setSessionId(sub.sessionId);
+        accessor.setSubscriptionId(sub.subscriptionId);
+        accessor.setLeaveMutable(true);
+        brokerChannel.send(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    private record Subscription(String sessionId, String subscriptionId, Long userId, Long roomId, RoomFeed feed) {
+    }
+}
@@ -0,0 +1,22 @@
+package top.villion.www;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * 大厅房间摘要：不含成员集合，成员数来自 member_count 计数
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomSummary {
+    private Long id;
+    private String name;
+    private String description;
+    private Integer maxCapacity;
+    private Integer memberCount;
+    private Date createdAt;
+}
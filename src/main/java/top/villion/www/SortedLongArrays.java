@@ -0,0 +1,77 @@
+package top.villion.www;
+
+import java.util.Arrays;
+
+/**
+ * 有序 long[] 集合运算：数组按升序排列且无重复，修改操作返回新数组（写时复制）
+ */
+final class SortedLongArrays {
+
+    static final long[] EMPTY = new long[0];
+
+    private SortedLongArrays() {
+    }
+
+    static boolean contains(long[] set, long value) {
+        return Arrays.binarySearch(set, value) >= 0;
+    }
+
+    /** 插入元素，已存在时返回原数组 */
+    static long[] insert(long[] set, long value) {
+        int pos = Arrays.binarySearch(set, value);
+        if (pos >= 0) {
+            return set;
+        }
+        int at = -pos - 1;
+        long[] result = new long[set.length + 1];
+        System.arraycopy(set, 0, result, 0, at);
+        result[at] = value;
+        System.arraycopy(set, at, result, at + 1, set.length - at);
+        return result;
+    }
+
+    /** 删除元素，不存在时返回原数组 */
+    static long[] remove(long[] set, long value) {
+        int at = Arrays.binarySearch(set, value);
+        if (at < 0) {
+            return set;
+        }
+        if (set.length == 1) {
+            return EMPTY;
+        }
+        long[] result = new long[set.length - 1];
+        System.arraycopy(set, 0, result, 0, at);
+        System.arraycopy(set, at + 1, result, at, set.length - at - 1);
+        return result;
+    }
+
+    /** 求交集：线性归并 */
+    static long[] intersect(long[] a, long[] b) {
+        long[] result = new long[Math.min(a.length, b.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    /** 排序并去重（原地），返回有效长度的数组 */
+    static long[] sortDistinct(long[] values, int length) {
+        Arrays.sort(values, 0, length);
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            if (n == 0 || values[n - 1] != values[i]) {
+                values[n++] = values[i];
+            }
+        }
+        return n == values.length ? values : Arrays.copyOf(values, n);
+    }
+}
@@ -0,0 +1,80 @@
+package top.villion.www;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.annotation.support.SimpAnnotationMethodMessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 入站通道计时：记录每个 @MessageMapping 处理耗时，按目的地打标签（stomp.inbound.handle）
+ *
+ * beforeHandle 与 afterMessageHandled 在同一线程执行，开始时间存放在线程本地的 long[] 中，
+ * 每次采样不创建对象。目的地个数有上限，防止客户端用任意目的地撑爆标签。
+ */
+@Component
+public class StompMetricsInterceptor implements ExecutorChannelInterceptor {
+
+    private static final String METRIC = "stomp.inbound.handle";
+    private static final int MAX_DESTINATIONS = 64;
+    private static final String OTHER = "other";
+
+    private final MeterRegistry registry;
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Timer otherTimer;
+    private final ThreadLocal<long[]> startNanos = ThreadLocal.withInitial(() -> new long[1]);
+
+    public StompMetricsInterceptor(MeterRegistry registry) {
+        this.registry = registry;
+        this.otherTimer = register(OTHER);
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        if (handler instanceof SimpAnnotationMethodMessageHandler) {
+            startNanos.get()[0] = System.nanoTime();
+        }
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler,
+                                    Exception ex) {
+        if (!(handler instanceof SimpAnnotationMethodMessageHandler)
+                || SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            return;
+        }
+        long elapsed = System.nanoTime() - startNanos.get()[0];
+        timerFor(SimpMessageHeaderAccessor.getDestination(message.getHeaders()))
+                .record(elapsed, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timerFor(String destination) {
+        if (destination == null) {
+            return otherTimer;
+        }
+        Timer timer = timers.get(destination);
+        if (timer != null) {
+            return timer;
+        }
+        if (timers.size() >= MAX_DESTINATIONS) {
+            return otherTimer;
+        }
+        return timers.computeIfAbsent(destination, this::register);
+    }
+
+    private Timer register(String destination) {
+        return Timer.builder(METRIC)
+                .description("STOMP 消息处理耗时")
+                .tag("destination", destination)
+                .register(registry);
+    }
+}
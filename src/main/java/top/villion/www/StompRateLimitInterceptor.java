@@ -0,0 +1,182 @@
+package top.villion.www;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 入站限流：每个会话一个总令牌桶，会话内每个目的地再各一个令牌桶
+ *
+ * 令牌桶用 GCRA 实现：桶状态只是一个 AtomicLong（理论到达时间），CAS 更新，无锁且每帧不创建对象。
+ * 超限的帧直接丢弃，并（每秒至多一次）向 /user/queue/errors 发送提示；
+ * 不使用 STOMP ERROR 帧，因为 ERROR 会导致服务端关闭连接。
+ */
+@Component
+public class StompRateLimitInterceptor implements ChannelInterceptor {
+
+    static final String ERRORS_DESTINATION = "/queue/errors";
+
+    private static final int MAX_DESTINATIONS_PER_SESSION = 8; // 超出的目的地共用一个桶
+    private static final long NOTIFY_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final boolean enabled;
+    private final long sessionInterval;     // 两个令牌之间的间隔（纳秒）
+    private final long sessionTolerance;    // 允许的突发量对应的提前量（纳秒）
+    private final long destinationInterval;
+    private final long destinationTolerance;
+    private final AppMetrics appMetrics;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    private final ConcurrentHashMap<String, SessionLimits> sessions = new ConcurrentHashMap<>();
+
+    public StompRateLimitInterceptor(@Value("${app.rate-limit.enabled:true}") boolean enabled,
+                                     @Value("${app.rate-limit.session.per-second:50}") double sessionRate,
+                                     @Value("${app.rate-limit.session.burst:100}") int sessionBurst,
+                                     @Value("${app.rate-limit.destination.per-second:20}") double destinationRate,
+                                     @Value("${app.rate-limit.destination.burst:40}") int destinationBurst,
+                                     AppMetrics appMetrics,
+                                     @Lazy SimpMessagingTemplate messagingTemplate) {
+        if (sessionRate <= 0 || destinationRate <= 0 || sessionBurst < 1 || destinationBurst < 1) {
+            throw new IllegalArgumentException("限流速率必须大于 0，突发量至少为 1");
+        }
+        this.enabled = enabled;
+        this.sessionInterval = (long) (TimeUnit.SECONDS.toNanos(1) / sessionRate);
+        this.sessionTolerance = sessionInterval * (sessionBurst - 1);
+        this.destinationInterval = (long) (TimeUnit.SECONDS.toNanos(1) / destinationRate);
+        this.destinationTolerance = destinationInterval * (destinationBurst - 1);
+        this.appMetrics = appMetrics;
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!enabled) {
+            return message;
+        }
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        if (type != SimpMessageType.MESSAGE && type != SimpMessageType.SUBSCRIBE) {
+            return message;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (sessionId == null) {
+            return message;
+        }
+
+        long now = System.nanoTime();
+        SessionLimits limits = sessions.computeIfAbsent(sessionId, SessionLimits::new);
+        if (!acquire(limits.session, sessionInterval, sessionTolerance, now)) {
+            appMetrics.rateLimited(AppMetrics.SCOPE_SESSION);
+            reject(limits, headers, now);
+            return null;
+        }
+        if (type == SimpMessageType.MESSAGE) {
+            String destination = SimpMessageHeaderAccessor.getDestination(headers);
+            if (!acquire(limits.bucketFor(destination), destinationInterval, destinationTolerance, now)) {
+                appMetrics.rateLimited(AppMetrics.SCOPE_DESTINATION);
+                reject(limits, headers, now);
+                return null;
+            }
+        }
+        return message;
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        sessions.remove(event.getSessionId());
+        // 发送缓冲区超限或发送超时的会话由框架以 SESSION_NOT_RELIABLE 关闭
+        if (CloseStatus.SESSION_NOT_RELIABLE.equals(event.getCloseStatus())) {
+            appMetrics.slowConsumerClosed();
+        }
+    }
+
+    /**
+     * GCRA：理论到达时间（tat）超前当前时间不超过 tolerance 时放行，并把 tat 推后一个间隔
+     */
+    static boolean acquire(AtomicLong tat, long interval, long tolerance, long now) {
+        for (;;) {
+            long current = tat.get();
+            long base = current - now > 0 ? current : now;
+            if (base - now > tolerance) {
+                return false;
+            }
+            if (tat.compareAndSet(current, base + interval)) {
+                return true;
+            }
+        }
+    }
+
+    private void reject(SessionLimits limits, MessageHeaders headers, long now) {
+        long last = limits.lastNotified.get();
+        if (now - last < NOTIFY_INTERVAL_NANOS || !limits.lastNotified.compareAndSet(last, now)) {
+            return;
+        }
+        Principal user = SimpMessageHeaderAccessor.getUser(headers);
+        if (user == null) {
+            return;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        messagingTemplate.convertAndSendToUser(user.getName(), ERRORS_DESTINATION,
+                Map.of("code", "RATE_LIMITED",
+                        "message", "发送过于频繁，部分消息已被丢弃",
+                        "destination", destination == null ? "" : destination));
+    }
+
+    /**
+     * 单个会话的限流状态，在会话第一帧时创建，断开时移除
+     */
+    static final class SessionLimits {
+        final AtomicLong session;
+        final AtomicLong lastNotified;
+        private final AtomicReferenceArray<String> destinations = new AtomicReferenceArray<>(MAX_DESTINATIONS_PER_SESSION);
+        private final AtomicLong[] buckets = new AtomicLong[MAX_DESTINATIONS_PER_SESSION];
+        private final AtomicLong overflow;
+
+        SessionLimits(String sessionId) {
+            long now = System.nanoTime();
+            session = new AtomicLong(now);
+            lastNotified = new AtomicLong(now - NOTIFY_INTERVAL_NANOS);
+            overflow = new AtomicLong(now);
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new AtomicLong(now);
+            }
+        }
+
+        // 目的地槽位用 CAS 占用，占满后其余目的地共用 overflow
+        AtomicLong bucketFor(String destination) {
+            if (destination == null) {
+                return overflow;
+            }
+            for (int i = 0; i < MAX_DESTINATIONS_PER_SESSION; i++) {
+                String d = destinations.get(i);
+                if (d == null) {
+                    if (destinations.compareAndSet(i, null, destination)) {
+                        return buckets[i];
+                    }
+                    d = destinations.get(i);
+                }
+                if (d.equals(destination)) {
+                    return buckets[i];
+                }
+            }
+            return overflow;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package top.villion.www;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * 随机匹配临时房间（负数ID）：查看、离开、保留为正式房间
+ */
+@RestController
+@RequestMapping("/temp-rooms")
+public class TempRoomController {
+
+    private final TempRoomService tempRoomService;
+
+    public TempRoomController(TempRoomService tempRoomService) {
+        this.tempRoomService = tempRoomService;
+    }
+
+    /**
+     * 临时房间信息
+     * GET /temp-rooms/{roomId}
+     */
+    @GetMapping("/{roomId}")
+    public ResponseEntity<TempRoomRegistry.TempRoom> getTempRoom(@PathVariable Long roomId) {
+        return ResponseEntity.ok(tempRoomService.get(roomId));
+    }
+
+    /**
+     * 离开临时房间，双方都离开后房间立即关闭
+     * POST /temp-rooms/{roomId}/leave
+     */
+    @PostMapping("/{roomId}/leave")
+    public ResponseEntity<Void> leave(@PathVariable Long roomId, @RequestBody RoomController.JoinRoomRequest request) {
+        if (request.getUserId() == null) {
+            throw new RuntimeException("用户ID不能为空");
+        }
+        tempRoomService.leave(roomId, request.getUserId());
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * 保留会话：双方都调用后转为正式房间，新房间ID同时推送到 /user/queue/room-kept
+     * POST /temp-rooms/{roomId}/keep
+     */
+    @PostMapping("/{roomId}/keep")
+    public ResponseEntity<Map<String, Object>> keep(@PathVariable Long roomId, @RequestBody RoomController.JoinRoomRequest request) {
+        if (request.getUserId() == null) {
+            throw new RuntimeException("用户ID不能为空");
+        }
+        return ResponseEntity.ok(tempRoomService.keep(roomId, request.getUserId()));
+    }
+}
@@ -0,0 +1,107 @@
+package top.villion.www;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 随机匹配的临时房间：只存在于内存，不写 rooms / room_members 表
+ *
+ * 使用负数ID（-1、-2 ...），与数据库房间ID不冲突，房间主题、订阅校验等沿用 /topic/rooms/{roomId}。
+ * 服务重启后临时房间全部失效。回收和保留由 TempRoomService 负责。
+ */
+@Component
+public class TempRoomRegistry {
+
+    private final AtomicLong lastId = new AtomicLong();
+    private final ConcurrentHashMap<Long, TempRoom> rooms = new ConcurrentHashMap<>();
+
+    public static boolean isTempRoom(Long roomId) {
+        return roomId != null && roomId < 0;
+    }
+
+    public TempRoom create(Long userId, Long otherUserId) {
+        TempRoom room = new TempRoom(lastId.decrementAndGet(), Set.of(userId, otherUserId), System.currentTimeMillis());
+        rooms.put(room.id, room);
+        return room;
+    }
+
+    public TempRoom get(Long roomId) {
+        return rooms.get(roomId);
+    }
+
+    public boolean isMember(Long roomId, Long userId) {
+        TempRoom room = rooms.get(roomId);
+        return room != null && room.members.contains(userId) && !room.left.contains(userId);
+    }
+
+    Set<Long> memberIds(Long roomId) {
+        TempRoom room = rooms.get(roomId);
+        return room == null ? Set.of() : room.members;
+    }
+
+    /**
+     * 记录房间活动（有消息发送），用于空闲回收
+     */
+    public void touch(Long roomId) {
+        TempRoom room = rooms.get(roomId);
+        if (room != null) {
+            room.lastActivity = System.currentTimeMillis();
+        }
+    }
+
+    boolean remove(TempRoom room) {
+        return rooms.remove(room.id, room);
+    }
+
+    void restore(TempRoom room) {
+        rooms.putIfAbsent(room.id, room);
+    }
+
+    Collection<TempRoom> rooms() {
+        return rooms.values();
+    }
+
+    public int size() {
+        return rooms.size();
+    }
+
+    public static final class TempRoom {
+        final Long id;
+        final Set<Long> members;
+        final long createdAt;
+        volatile long lastActivity;
+        final Set<Long> left = ConcurrentHashMap.newKeySet();      // 已主动离开的成员
+        final Set<Long> keepVotes = ConcurrentHashMap.newKeySet(); // 选择保留会话的成员
+
+        TempRoom(Long id, Set<Long> members, long createdAt) {
+            this.id = id;
+            this.members = members;
+            this.createdAt = createdAt;
+            this.lastActivity = createdAt;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public Set<Long> getMembers() {
+            return members;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        public long getLastActivity() {
+            return lastActivity;
+        }
+
+        boolean abandoned() {
+            return left.containsAll(members);
+        }
+    }
+}
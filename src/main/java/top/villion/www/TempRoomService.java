@@ -0,0 +1,175 @@
+package top.villion.www;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 临时房间的生命周期：创建、离开、保留为正式房间、定时回收
+ *
+ * 回收条件（满足其一）：双方都已离开；超过 idle-ttl 没有消息；双方都已离线且超过 offline-grace 没有消息。
+ */
+@Slf4j
+@Service
+public class TempRoomService {
+
+    // 保留成功后通知双方新的房间ID
+    static final String ROOM_KEPT_QUEUE = "/queue/room-kept";
+
+    private final TempRoomRegistry tempRoomRegistry;
+    private final RoomService roomService;
+    private final RoomSubscriptionRegistry roomSubscriptionRegistry;
+    private final CompactRoomPublisher compactRoomPublisher;
+    private final RoomHistory roomHistory;
+    private final ReadMarkers readMarkers;
+    private final PresenceRegistry presenceRegistry;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final long idleTtlMillis;
+    private final long offlineGraceMillis;
+
+    public TempRoomService(TempRoomRegistry tempRoomRegistry,
+                           RoomService roomService,
+                           RoomSubscriptionRegistry roomSubscriptionRegistry,
+                           CompactRoomPublisher compactRoomPublisher,
+                           RoomHistory roomHistory,
+                           ReadMarkers readMarkers,
+                           PresenceRegistry presenceRegistry,
+                           SimpMessagingTemplate messagingTemplate,
+                           @Value("${app.temp-room.idle-ttl-seconds:600}") long idleTtlSeconds,
+                           @Value("${app.temp-room.offline-grace-seconds:60}") long offlineGraceSeconds) {
+        this.tempRoomRegistry = tempRoomRegistry;
+        this.roomService = roomService;
+        this.roomSubscriptionRegistry = roomSubscriptionRegistry;
+        this.compactRoomPublisher = compactRoomPublisher;
+        this.roomHistory = roomHistory;
+        this.readMarkers = readMarkers;
+        this.presenceRegistry = presenceRegistry;
+        this.messagingTemplate = messagingTemplate;
+        this.idleTtlMillis = idleTtlSeconds * 1000;
+        this.offlineGraceMillis = offlineGraceSeconds * 1000;
+    }
+
+    public Long create(Long userId, Long matchedUserId) {
+        return tempRoomRegistry.create(userId, matchedUserId).getId();
+    }
+
+    public TempRoomRegistry.TempRoom get(Long roomId) {
+        TempRoomRegistry.TempRoom room = tempRoomRegistry.get(roomId);
+        if (room == null) {
+            throw new RuntimeException("临时房间不存在或已过期");
+        }
+        return room;
+    }
+
+    public void leave(Long roomId, Long userId) {
+        TempRoomRegistry.TempRoom room = requireMember(roomId, userId);
+        room.left.add(userId);
+        room.keepVotes.remove(userId);
+        roomSubscriptionRegistry.onLeave(roomId, userId);
+        if (room.abandoned()) {
+            close(room);
+        }
+    }
+
+    /**
+     * 选择保留会话：双方都选择保留后转为正式房间（写入数据库），把临时房间的消息复制到新房间，并通知双方新的房间ID
+     * @return kept=false 表示还在等对方；kept=true 时带上 roomId
+     */
+    @Transactional
+    public Map<String, Object> keep(Long roomId, Long userId) {
+        TempRoomRegistry.TempRoom room = requireMember(roomId, userId);
+        Map<String, Object> result = new LinkedHashMap<>();
+        synchronized (room) {
+            if (!room.left.isEmpty()) {
+                throw new RuntimeException("对方已离开，无法保留会话");
+            }
+            room.keepVotes.add(userId);
+            if (!room.keepVotes.containsAll(room.members) || !tempRoomRegistry.remove(room)) {
+                result.put("kept", false);
+                return result;
+            }
+        }
+
+        // 先从登记表摘下，防止重复保留和回收；写库或提交失败时放回，临时房间继续可用，双方可以重试
+        TransactionHooks.afterRollback(() -> {
+            room.keepVotes.clear();
+            tempRoomRegistry.restore(room);
+        });
+        Room persisted = new Room();
+        persisted.setName("私聊-" + System.currentTimeMillis());
+        persisted.setMaxCapacity(room.members.size());
+        Room saved = roomService.createRoom(persisted, userId);
+        roomService.joinRoomBatch(saved.getId(), room.members);
+
+        TransactionHooks.afterCommit(() -> {
+            // 保留成功后临时房间已不接受新消息，复制的是完整会话；双方都看过这些消息，不计入未读
+            long latestSeq = roomHistory.copy(roomId, saved.getId());
+            for (Long member : room.members) {
+                readMarkers.markRead(member, saved.getId(), latestSeq);
+            }
+            Map<String, Long> kept = Map.of("tempRoomId", roomId, "roomId", saved.getId());
+            for (Long member : room.members) {
+                messagingTemplate.convertAndSendToUser(member.toString(), ROOM_KEPT_QUEUE, kept);
+            }
+            release(roomId);
+        });
+        result.put("kept", true);
+        result.put("roomId", saved.getId());
+        return result;
+    }
+
+    @Scheduled(fixedDelayString = "${app.temp-room.reap-interval-ms:30000}")
+    public void reap() {
+        long now = System.currentTimeMillis();
+        int reaped = 0;
+        for (TempRoomRegistry.TempRoom room : tempRoomRegistry.rooms()) {
+            long idle = now - room.lastActivity;
+            if (room.abandoned() || idle > idleTtlMillis || (idle > offlineGraceMillis && allOffline(room))) {
+                if (close(room)) {
+                    reaped++;
+                }
+            }
+        }
+        if (reaped > 0) {
+            log.debug("回收临时房间 {} 个，剩余 {} 个", reaped, tempRoomRegistry.size());
+        }
+    }
+
+    private TempRoomRegistry.TempRoom requireMember(Long roomId, Long userId) {
+        TempRoomRegistry.TempRoom room = get(roomId);
+        if (!room.members.contains(userId)) {
+            throw new RuntimeException("不是该临时房间的成员");
+        }
+        return room;
+    }
+
+    private boolean allOffline(TempRoomRegistry.TempRoom room) {
+        for (Long member : room.members) {
+            if (presenceRegistry.isOnline(member)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean close(TempRoomRegistry.TempRoom room) {
+        if (!tempRoomRegistry.remove(room)) {
+            return false;
+        }
+        release(room.id);
+        return true;
+    }
+
+    // 清理订阅（同时通知 Broker 取消订阅）、紧凑编码字典和最近消息
+    private void release(Long roomId) {
+        roomSubscriptionRegistry.onRoomDeleted(roomId);
+        compactRoomPublisher.onRoomDeleted(roomId);
+        roomHistory.onRoomDeleted(roomId);
+    }
+}
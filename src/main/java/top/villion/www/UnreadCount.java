@@ -0,0 +1,7 @@
+package top.villion.www;
+
+/**
+ * 用户在一个房间的未读数：unread = latestSeq - lastReadSeq
+ */
+public record UnreadCount(Long roomId, long unread, long lastReadSeq, long latestSeq) {
+}
@@ -13,7 +13,10 @@ import java.util.Set;
 @Data
 public class User {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "users_id")
+    @TableGenerator(name = "users_id", table = IdGenerators.TABLE,
+            pkColumnName = IdGenerators.PK_COLUMN, valueColumnName = IdGenerators.VALUE_COLUMN,
+            pkColumnValue = IdGenerators.USERS, allocationSize = IdGenerators.USERS_ALLOCATION_SIZE)
     private Long id;
 
     @Column(unique = true, nullable = false) // 用户名唯一且不为空
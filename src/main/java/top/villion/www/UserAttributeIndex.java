@@ -0,0 +1,390 @@
+package top.villion.www;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 用户发现（"可能喜欢的人"）的属性索引：性别、年龄、地区的每个取值对应一个压缩位图（CompressedBitmap）
+ *
+ * 启动时按 id 分页全量加载，之后由注册、资料修改、删除、批量导入增量更新。
+ * 查询 = 各维度内取值求并（OR），维度之间求交（AND），再去掉排除的地区、自己和已关注的人（NOT），
+ * 然后按用户ID游标分页或随机抽样；按用户ID高 16 位逐块惰性求值，分页凑够一页即停止，全程不查数据库。
+ * 年龄另外维护按 2 的幂对齐的年龄段位图，年龄范围只需合并少量位图。
+ * 读多写少，用读写锁保护；用户ID须在 int 范围内。
+ */
+@Slf4j
+@Component
+public class UserAttributeIndex {
+
+    private static final int LOAD_PAGE_SIZE = 10_000;
+    // 年龄段：第 k 层（k = 1..AGE_LEVELS）把 [n * 2^k, (n + 1) * 2^k) 岁的用户合并为一个位图，键为 n
+    private static final int AGE_LEVELS = 6;
+    private static final int MAX_BAND_AGE = (1 << (AGE_LEVELS + 1)) - 1;
+
+    private final UserRepository userRepository;
+    private final FollowGraph followGraph;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final CompressedBitmap all = new CompressedBitmap();
+    private final Map<String, CompressedBitmap> byGender = new HashMap<>();
+    private final TreeMap<Integer, CompressedBitmap> byAge = new TreeMap<>();
+    private final Map<String, CompressedBitmap> byRegion = new HashMap<>();
+    private final List<Map<Integer, CompressedBitmap>> ageBands = new ArrayList<>(AGE_LEVELS);
+
+    public UserAttributeIndex(UserRepository userRepository, FollowGraph followGraph) {
+        this.userRepository = userRepository;
+        this.followGraph = followGraph;
+        for (int level = 1; level <= AGE_LEVELS; level++) {
+            ageBands.add(new HashMap<>());
+        }
+    }
+
+    @PostConstruct
+    public void load() {
+        long lastId = 0;
+        List<Object[]> page;
+        do {
+            page = userRepository.findDiscoveryFieldsAfter(lastId, PageRequest.ofSize(LOAD_PAGE_SIZE));
+            for (Object[] row : page) {
+                lastId = (Long) row[0];
+                index(lastId, (String) row[1], (Integer) row[2], (String) row[3]);
+            }
+        } while (page.size() == LOAD_PAGE_SIZE);
+        log.info("用户属性索引已加载：{} 个用户", size());
+    }
+
+    /**
+     * 新增或更新用户的索引（为空的属性不索引，按该属性筛选时不会命中）
+     */
+    public void index(Long userId, String gender, Integer age, String region) {
+        if (userId == null || userId <= 0 || userId > Integer.MAX_VALUE) {
+            return;
+        }
+        int id = userId.intValue();
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            all.add(id);
+            if (gender != null) {
+                byGender.computeIfAbsent(gender, g -> new CompressedBitmap()).add(id);
+            }
+            if (age != null) {
+                byAge.computeIfAbsent(age, a -> new CompressedBitmap()).add(id);
+                if (age >= 0 && age <= MAX_BAND_AGE) {
+                    for (int level = 1; level <= AGE_LEVELS; level++) {
+                        ageBands.get(level - 1).computeIfAbsent(age >> level, a -> new CompressedBitmap()).add(id);
+                    }
+                }
+            }
+            if (region != null) {
+                byRegion.computeIfAbsent(region, r -> new CompressedBitmap()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long userId) {
+        if (userId == null || userId <= 0 || userId > Integer.MAX_VALUE) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            removeLocked(userId.intValue());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return all.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按条件筛选用户ID
+     * @param viewerId 查看者，结果中排除自己和已关注的人（可为空）
+     * @param afterId  分页游标：返回大于该ID的用户（抽样时忽略）
+     * @param sample   true 时从全部结果中随机抽取 limit 个（不分页）
+     */
+    public long[] search(Long viewerId, Filter filter, long afterId, int limit, boolean sample) {
+        // 排除集合在锁外准备
+        CompressedBitmap excluded = CompressedBitmap.of(viewerId == null ? SortedLongArrays.EMPTY
+                : SortedLongArrays.insert(followGraph.following(viewerId), viewerId));
+        int min = filter.minAge() == null ? Integer.MIN_VALUE : filter.minAge();
+        int max = filter.maxAge() == null ? Integer.MAX_VALUE : filter.maxAge();
+        if (min > max || limit <= 0) {
+            return new long[0];
+        }
+        lock.readLock().lock();
+        try {
+            // 每个维度是一组取值位图（组内 OR），维度之间 AND；按基数从小到大排列，块内结果尽早为空
+            List<List<CompressedBitmap>> includes = new ArrayList<>(3);
+            if (!filter.genders().isEmpty()) {
+                includes.add(lookup(byGender, filter.genders()));
+            }
+            if (filter.minAge() != null || filter.maxAge() != null) {
+                includes.add(ageRange(min, max));
+            }
+            if (!filter.regions().isEmpty()) {
+                includes.add(lookup(byRegion, filter.regions()));
+            }
+            for (List<CompressedBitmap> group : includes) {
+                if (group.isEmpty()) {
+                    return new long[0];
+                }
+            }
+            includes.sort(Comparator.comparingLong(UserAttributeIndex::cardinality));
+            List<CompressedBitmap> excludes = lookup(byRegion, filter.excludeRegions());
+            if (!excluded.isEmpty()) {
+                excludes.add(excluded);
+            }
+            Query query = new Query(includes, excludes);
+            return sample ? query.sample(limit) : query.page(afterId, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static long cardinality(List<CompressedBitmap> group) {
+        long total = 0;
+        for (CompressedBitmap bitmap : group) {
+            total += bitmap.cardinality();
+        }
+        return total;
+    }
+
+    private static List<CompressedBitmap> lookup(Map<String, CompressedBitmap> index, Collection<String> values) {
+        List<CompressedBitmap> bitmaps = new ArrayList<>(values.size() + 1);
+        for (String value : values) {
+            CompressedBitmap bitmap = index.get(value);
+            if (bitmap != null) {
+                bitmaps.add(bitmap);
+            }
+        }
+        return bitmaps;
+    }
+
+    /**
+     * 年龄范围 [min, max] 拆成尽量少的预先合并的年龄段（按 2 的幂对齐，见 ageBands），
+     * 如 22~30 = 22~23、24~27、28~29、30 四个位图，而不是 9 个单岁位图；超出 0~MAX_BAND_AGE 的年龄逐岁取
+     */
+    private List<CompressedBitmap> ageRange(int min, int max) {
+        List<CompressedBitmap> bitmaps = new ArrayList<>();
+        if (byAge.isEmpty()) {
+            return bitmaps;
+        }
+        int lo = Math.max(min, byAge.firstKey());
+        int hi = Math.min(max, byAge.lastKey());
+        if (lo > hi) {
+            return bitmaps;
+        }
+        if (lo < 0) {
+            bitmaps.addAll(byAge.subMap(lo, true, Math.min(hi, -1), true).values());
+        }
+        if (hi > MAX_BAND_AGE) {
+            bitmaps.addAll(byAge.subMap(Math.max(lo, MAX_BAND_AGE + 1), true, hi, true).values());
+        }
+        int end = Math.min(hi, MAX_BAND_AGE);
+        for (int age = Math.max(lo, 0); age <= end; ) {
+            int level = 0;
+            while (level < AGE_LEVELS && (age & ((2 << level) - 1)) == 0 && age + (2 << level) - 1 <= end) {
+                level++;
+            }
+            CompressedBitmap bitmap = level == 0 ? byAge.get(age) : ageBands.get(level - 1).get(age >> level);
+            if (bitmap != null) {
+                bitmaps.add(bitmap);
+            }
+            age += 1 << level;
+        }
+        return bitmaps;
+    }
+
+    private void removeLocked(int id) {
+        if (!all.remove(id)) {
+            return;
+        }
+        removeFrom(byGender, id);
+        Integer age = removeFrom(byAge, id);
+        if (age != null && age >= 0 && age <= MAX_BAND_AGE) {
+            for (int level = 1; level <= AGE_LEVELS; level++) {
+                Map<Integer, CompressedBitmap> bands = ageBands.get(level - 1);
+                CompressedBitmap band = bands.get(age >> level);
+                if (band != null && band.remove(id) && band.isEmpty()) {
+                    bands.remove(age >> level);
+                }
+            }
+        }
+        removeFrom(byRegion, id);
+    }
+
+    // 属性取值很少，逐个位图尝试删除即可，不需要另外保存每个用户的属性；返回用户原来的取值
+    private static <K> K removeFrom(Map<K, CompressedBitmap> index, int id) {
+        for (Iterator<Map.Entry<K, CompressedBitmap>> it = index.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<K, CompressedBitmap> entry = it.next();
+            if (entry.getValue().remove(id)) {
+                if (entry.getValue().isEmpty()) {
+                    it.remove();
+                }
+                return entry.getKey(); // 每个维度只在一个取值下
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 一次查询的逐块求值：按 all 的块（用户ID高 16 位）顺序，每块把各维度的取值位图合并到 1024 个 long 的缓冲区，
+     * 维度之间按位与、再去掉排除集合；分页从游标所在的块开始，凑够 limit 个就停止，不求出完整结果
+     */
+    private final class Query {
+        private final List<List<CompressedBitmap>> includes;
+        private final List<CompressedBitmap> excludes;
+        private final long[] words = new long[1024];
+        private final long[] scratch = new long[1024];
+
+        Query(List<List<CompressedBitmap>> includes, List<CompressedBitmap> excludes) {
+            this.includes = includes;
+            this.excludes = excludes;
+        }
+
+        long[] page(long afterId, int limit) {
+            long from = Math.max(afterId + 1, 0);
+            if (from > Integer.MAX_VALUE) {
+                return new long[0];
+            }
+            int start = (int) from;
+            long[] out = new long[limit];
+            int n = 0;
+            for (int i = all.firstChunkFrom(start >>> 16); i < all.chunkCount() && n < limit; i++) {
+                int high = all.chunkKey(i);
+                if (!evaluate(high)) {
+                    continue;
+                }
+                int lowStart = high == start >>> 16 ? start & 0xFFFF : 0;
+                int w = lowStart >>> 6;
+                long word = words[w] & (-1L << lowStart);
+                while (n < limit) {
+                    if (word != 0) {
+                        out[n++] = ((long) high << 16) | ((long) w << 6) | Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                    } else if (++w < words.length) {
+                        word = words[w];
+                    } else {
+                        break;
+                    }
+                }
+            }
+            return n == limit ? out : Arrays.copyOf(out, n);
+        }
+
+        // 单遍蓄水池抽样（Algorithm L）：逐块求值，用随机跳跃直接算出下一个入选的排名，不含入选排名的字按 bitCount 整字跳过
+        long[] sample(int limit) {
+            SplittableRandom random = new SplittableRandom();
+            long[] out = new long[limit];
+            long seen = 0; // 已经过的命中数
+            long next = 0; // 下一个入选的排名
+            double weight = Math.exp(Math.log(1 - random.nextDouble()) / limit);
+            for (int i = 0; i < all.chunkCount(); i++) {
+                int high = all.chunkKey(i);
+                if (!evaluate(high)) {
+                    continue;
+                }
+                for (int w = 0; w < words.length; w++) {
+                    int bits = Long.bitCount(words[w]);
+                    while (next < seen + bits) {
+                        long word = words[w];
+                        for (long k = next - seen; k > 0; k--) {
+                            word &= word - 1;
+                        }
+                        long id = ((long) high << 16) | ((long) w << 6) | Long.numberOfTrailingZeros(word);
+                        if (next < limit) {
+                            out[(int) next] = id; // 前 limit 个直接放入
+                        } else {
+                            out[random.nextInt(limit)] = id;
+                        }
+                        if (next < limit - 1) {
+                            next++;
+                            continue;
+                        }
+                        if (next >= limit) {
+                            weight *= Math.exp(Math.log(1 - random.nextDouble()) / limit);
+                        }
+                        double skip = Math.floor(Math.log(1 - random.nextDouble()) / Math.log(1 - weight));
+                        next = skip < Integer.MAX_VALUE ? next + (long) skip + 1 : Long.MAX_VALUE;
+                    }
+                    seen += bits;
+                }
+            }
+            int n = (int) Math.min(seen, limit);
+            // 蓄水池中的顺序不随机，打乱后返回
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                long tmp = out[i];
+                out[i] = out[j];
+                out[j] = tmp;
+            }
+            return n == limit ? out : Arrays.copyOf(out, n);
+        }
+
+        // 求高 16 位为 high 的块的结果，写入 words；返回 false 表示该块结果为空
+        private boolean evaluate(int high) {
+            if (includes.isEmpty()) {
+                Arrays.fill(words, 0);
+                all.orChunk(high, words);
+            } else if (!union(includes.get(0), high, words)) {
+                return false;
+            }
+            for (int g = 1; g < includes.size(); g++) {
+                if (!union(includes.get(g), high, scratch)) {
+                    return false;
+                }
+                long any = 0;
+                for (int w = 0; w < words.length; w++) {
+                    any |= words[w] &= scratch[w];
+                }
+                if (any == 0) {
+                    return false;
+                }
+            }
+            for (CompressedBitmap exclude : excludes) {
+                exclude.andNotChunk(high, words);
+            }
+            return true;
+        }
+
+        private static boolean union(List<CompressedBitmap> group, int high, long[] target) {
+            Arrays.fill(target, 0);
+            boolean any = false;
+            for (CompressedBitmap bitmap : group) {
+                any |= bitmap.orChunk(high, target);
+            }
+            return any;
+        }
+    }
+
+    /**
+     * 筛选条件：genders / regions 为空表示不限；年龄上下限（含）可为空；excludeRegions 中的地区排除
+     */
+    public record Filter(Set<String> genders, Integer minAge, Integer maxAge, Set<String> regions,
+                         Set<String> excludeRegions) {
+    }
+}
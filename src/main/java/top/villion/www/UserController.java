@@ -1,10 +1,17 @@
 package top.villion.www;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 @RestController
@@ -15,11 +22,30 @@ public class UserController {
     private static final Pattern USERNAME_PATTERN = Pattern.compile("^[a-zA-Z0-9_]{3,20}$");
     private static final Pattern PASSWORD_PATTERN = Pattern.compile("^.{6,20}$");
 
+    // 分页大小上限
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int MAX_DISCOVER_SIZE = 100;
+
     private final UserRepository userRepository;
+    private final UserExportService userExportService;
+    private final UserImportService userImportService;
+    private final UserProfileCache userProfileCache;
+    private final ReadMarkers readMarkers;
+    private final UserAttributeIndex userAttributeIndex;
 
     // 构造器注入（推荐方式，符合Spring最佳实践）
-    public UserController(UserRepository userRepository) {
+    public UserController(UserRepository userRepository,
+                          UserExportService userExportService,
+                          UserImportService userImportService,
+                          UserProfileCache userProfileCache,
+                          ReadMarkers readMarkers,
+                          UserAttributeIndex userAttributeIndex) {
         this.userRepository = userRepository;
+        this.userExportService = userExportService;
+        this.userImportService = userImportService;
+        this.userProfileCache = userProfileCache;
+        this.readMarkers = readMarkers;
+        this.userAttributeIndex = userAttributeIndex;
     }
 
     /**
@@ -59,6 +85,7 @@ public class UserController {
         // 3. 设置默认值并保存
         setDefaultValuesForNewUser(newUser);
         User savedUser = userRepository.save(newUser);
+        userAttributeIndex.index(savedUser.getId(), savedUser.getGender(), savedUser.getAge(), savedUser.getRegion());
 
         // 4. 返回201 Created（符合REST规范，新建资源应返回201）
         return ResponseEntity.status(201).body(savedUser);
@@ -87,12 +114,68 @@ public class UserController {
     }
 
     /**
-     * 查询所有用户
-     * 始终返回200+用户列表（空列表或实际数据）
+     * 分页查询用户（键集分页，按 id 升序）
+     * GET /users?cursor=上一页的nextCursor&size=50
+     * 只返回公开字段；nextCursor 为空表示已到末尾
      */
     @GetMapping
-    public ResponseEntity<List<User>> getAllUsers() {
-        return ResponseEntity.ok(userRepository.findAll());
+    public ResponseEntity<CursorPage<UserSummary>> getAllUsers(
+            @RequestParam(defaultValue = "0") Long cursor,
+            @RequestParam(defaultValue = "50") int size) {
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        List<UserSummary> users = userRepository.findSummariesAfter(cursor, PageRequest.ofSize(limit));
+        Long nextCursor = users.size() < limit ? null : users.get(users.size() - 1).getId();
+        return ResponseEntity.ok(new CursorPage<>(users, nextCursor));
+    }
+
+    /**
+     * 发现用户（"可能喜欢的人"）：内存属性索引筛选，不查询 users 表
+     * GET /users/discover?userId=1&gender=女&minAge=20&maxAge=30&region=北京,上海&excludeRegion=广州&cursor=0&size=20
+     * 同一条件的多个取值为"或"，不同条件之间为"且"；结果排除自己和已关注的人
+     * sample=true 时随机返回 size 个（不分页，nextCursor 为空），否则按用户ID升序分页
+     */
+    @GetMapping("/discover")
+    public ResponseEntity<CursorPage<UserProfile>> discoverUsers(
+            @RequestParam(required = false) Long userId,
+            @RequestParam(required = false) Set<String> gender,
+            @RequestParam(required = false) Integer minAge,
+            @RequestParam(required = false) Integer maxAge,
+            @RequestParam(required = false) Set<String> region,
+            @RequestParam(required = false) Set<String> excludeRegion,
+            @RequestParam(defaultValue = "false") boolean sample,
+            @RequestParam(defaultValue = "0") long cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        int limit = Math.max(1, Math.min(size, MAX_DISCOVER_SIZE));
+        UserAttributeIndex.Filter filter = new UserAttributeIndex.Filter(orEmpty(gender), minAge, maxAge,
+                orEmpty(region), orEmpty(excludeRegion));
+        long[] ids = userAttributeIndex.search(userId, filter, cursor, limit, sample);
+        List<UserProfile> users = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            userProfileCache.get(id).ifPresent(users::add);
+        }
+        Long nextCursor = sample || ids.length < limit ? null : ids[ids.length - 1];
+        return ResponseEntity.ok(new CursorPage<>(users, nextCursor));
+    }
+
+    /**
+     * 导出全部用户（NDJSON，每行一个用户）
+     * GET /users/export
+     */
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    public void exportUsers(HttpServletResponse response) throws IOException {
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        userExportService.exportNdjson(response.getOutputStream());
+    }
+
+    /**
+     * 批量导入用户（NDJSON，每行一个用户，需包含 username 和 password）
+     * POST /users/import，请求体按行流式读取，按批写入
+     * 返回 imported / duplicates / invalid 计数
+     */
+    @PostMapping(value = "/import", consumes = "application/x-ndjson")
+    public ResponseEntity<Map<String, Long>> importUsers(HttpServletRequest request) throws IOException {
+        return ResponseEntity.ok(userImportService.importNdjson(request.getInputStream()));
     }
 
     /**
@@ -127,6 +210,8 @@ public class UserController {
 
         // 4. 保存并返回更新后的用户
         User updatedUser = userRepository.save(dbUser);
+        userProfileCache.invalidate(id);
+        userAttributeIndex.index(id, updatedUser.getGender(), updatedUser.getAge(), updatedUser.getRegion());
         return ResponseEntity.ok(updatedUser);
     }
 
@@ -140,13 +225,39 @@ public class UserController {
             return ResponseEntity.notFound().build();
         }
         userRepository.deleteById(id);
+        userProfileCache.invalidate(id);
+        userAttributeIndex.remove(id);
         return ResponseEntity.noContent().build(); // 204：删除成功（无返回内容）
     }
 
+    /**
+     * 用户所在全部房间的未读数（内存计算，不逐个房间查询）
+     * GET /users/{id}/unread
+     */
+    @GetMapping("/{id}/unread")
+    public ResponseEntity<List<UnreadCount>> getUnreadCounts(@PathVariable Long id) {
+        if (!userProfileCache.exists(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(readMarkers.unreadCounts(id));
+    }
+
+    /**
+     * 用户资料缓存统计（命中/未命中/淘汰）
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Object>> getProfileCacheStats() {
+        return ResponseEntity.ok(userProfileCache.stats());
+    }
+
     // ------------------------------
     // 私有辅助方法（提高代码可读性）
     // ------------------------------
 
+    private static Set<String> orEmpty(Set<String> values) {
+        return values == null ? Set.of() : values;
+    }
+
     /**
      * 验证登录输入参数
      */
@@ -168,7 +279,7 @@ public class UserController {
     /**
      * 为新用户设置默认值
      */
-    private void setDefaultValuesForNewUser(User user) {
+    static void setDefaultValuesForNewUser(User user) {
         if (user.getAvatarUrl() == null || user.getAvatarUrl().trim().isEmpty()) {
             user.setAvatarUrl("https://picsum.photos/200/200?random=" + System.currentTimeMillis() % 100);
         }
@@ -214,11 +325,11 @@ public class UserController {
     }
 
     // 基础校验方法
-    private boolean isValidUsername(String username) {
+    static boolean isValidUsername(String username) {
         return username != null && USERNAME_PATTERN.matcher(username).matches();
     }
 
-    private boolean isValidPassword(String password) {
+    static boolean isValidPassword(String password) {
         return password != null && PASSWORD_PATTERN.matcher(password).matches();
     }
 }
@@ -0,0 +1,38 @@
+package top.villion.www;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.security.Principal;
+import java.util.Map;
+
+/**
+ * 握手时绑定用户身份：/ws?userId=xxx
+ *
+ * 无法携带查询参数的客户端可以在 CONNECT 帧中通过 userId 头声明身份（见 PresenceChannelInterceptor）
+ */
+public class UserIdHandshakeHandler extends DefaultHandshakeHandler {
+
+    static final String USER_ID_PARAM = "userId";
+
+    @Override
+    protected Principal determineUser(ServerHttpRequest request, WebSocketHandler wsHandler,
+                                      Map<String, Object> attributes) {
+        Principal principal = super.determineUser(request, wsHandler, attributes);
+        if (principal != null) {
+            return principal;
+        }
+        String userId = UriComponentsBuilder.fromUri(request.getURI()).build()
+                .getQueryParams().getFirst(USER_ID_PARAM);
+        if (userId == null) {
+            return null;
+        }
+        try {
+            return new UserPrincipal(Long.valueOf(userId));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package top.villion.www;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 用户批量导入：逐行读取 NDJSON（与 /users/export 格式相同，另需 password），按批写入
+ *
+ * 每批一个事务：persist 后 flush 交给 Hibernate 的 JDBC 批量插入（hibernate.jdbc.batch_size），
+ * 然后清空持久化上下文，内存占用与导入总量无关。已存在的用户名、格式不合法的行跳过并计数。
+ */
+@Service
+public class UserImportService {
+
+    private final ObjectReader reader;
+    private final TransactionTemplate transactionTemplate;
+    private final UserRepository userRepository;
+    private final UserAttributeIndex userAttributeIndex;
+    private final int batchSize;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public UserImportService(ObjectMapper objectMapper,
+                             PlatformTransactionManager transactionManager,
+                             UserRepository userRepository,
+                             UserAttributeIndex userAttributeIndex,
+                             @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:500}") int batchSize) {
+        this.reader = objectMapper.readerFor(User.class);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.userRepository = userRepository;
+        this.userAttributeIndex = userAttributeIndex;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return imported（写入数）、duplicates（用户名已存在）、invalid（无法解析或校验失败）
+     */
+    public Map<String, Long> importNdjson(InputStream in) throws IOException {
+        long imported = 0;
+        long invalid = 0;
+        long duplicates = 0;
+        List<User> batch = new ArrayList<>(batchSize);
+        BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            User user = parse(line);
+            if (user == null) {
+                invalid++;
+                continue;
+            }
+            batch.add(user);
+            if (batch.size() == batchSize) {
+                int written = writeBatch(batch);
+                imported += written;
+                duplicates += batch.size() - written;
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            int written = writeBatch(batch);
+            imported += written;
+            duplicates += batch.size() - written;
+        }
+
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("imported", imported);
+        result.put("duplicates", duplicates);
+        result.put("invalid", invalid);
+        return result;
+    }
+
+    private User parse(String line) {
+        User user;
+        try {
+            user = reader.readValue(line);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+        if (!UserController.isValidUsername(user.getUsername()) || !UserController.isValidPassword(user.getPassword())) {
+            return null;
+        }
+        // 主键、创建时间由服务端生成
+        user.setId(null);
+        user.setCreatedAt(null);
+        UserController.setDefaultValuesForNewUser(user);
+        return user;
+    }
+
+    // 一批一个事务；批内和库中已有的用户名跳过；提交后更新属性索引
+    private int writeBatch(List<User> batch) {
+        List<User> persisted = new ArrayList<>(batch.size());
+        transactionTemplate.executeWithoutResult(status -> {
+            Set<String> taken = new HashSet<>(userRepository.findExistingUsernames(
+                    batch.stream().map(User::getUsername).toList()));
+            for (User user : batch) {
+                if (taken.add(user.getUsername())) {
+                    entityManager.persist(user);
+                    persisted.add(user);
+                }
+            }
+            entityManager.flush();
+            entityManager.clear();
+        });
+        for (User user : persisted) {
+            userAttributeIndex.index(user.getId(), user.getGender(), user.getAge(), user.getRegion());
+        }
+        return persisted.size();
+    }
+}
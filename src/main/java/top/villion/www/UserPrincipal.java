@@ -0,0 +1,31 @@
+package top.villion.www;
+
+import java.security.Principal;
+
+/**
+ * WebSocket 会话身份：名称即用户ID，convertAndSendToUser(userId.toString(), ...) 据此路由
+ */
+public record UserPrincipal(Long userId) implements Principal {
+
+    @Override
+    public String getName() {
+        return userId.toString();
+    }
+
+    /**
+     * 从会话身份解析用户ID，无身份或格式不对时返回 null
+     */
+    public static Long userIdOf(Principal principal) {
+        if (principal instanceof UserPrincipal user) {
+            return user.userId();
+        }
+        if (principal == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(principal.getName());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
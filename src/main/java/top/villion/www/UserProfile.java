@@ -0,0 +1,12 @@
+package top.villion.www;
+
+/**
+ * 轻量用户资料：热点路径只需要这些字段，不加载完整实体
+ */
+public record UserProfile(Long id,
+                          String username,
+                          String avatarUrl,
+                          String gender,
+                          Integer age,
+                          String region) {
+}
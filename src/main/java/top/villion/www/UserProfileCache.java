@@ -0,0 +1,177 @@
+package top.villion.www;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 用户资料缓存：位于 UserRepository 之前，按容量（LRU）和 TTL 淘汰
+ *
+ * 分段加锁以降低竞争；用户资料变更或删除时由调用方 invalidate。
+ */
+@Component
+public class UserProfileCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final UserRepository userRepository;
+    private final long ttlMillis;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public UserProfileCache(UserRepository userRepository,
+                            @Value("${user.profile-cache.max-size:100000}") int maxSize,
+                            @Value("${user.profile-cache.ttl-seconds:600}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.ttlMillis = ttlSeconds * 1000;
+        int perSegment = Math.max(1, maxSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    /**
+     * 查询用户资料，未命中时从数据库加载（不存在的用户不缓存）
+     */
+    public Optional<UserProfile> get(Long userId) {
+        if (userId == null) {
+            return Optional.empty();
+        }
+        UserProfile cached = getIfPresent(userId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<UserProfile> loaded = userRepository.findProfileById(userId);
+        loaded.ifPresent(this::put);
+        return loaded;
+    }
+
+    public boolean exists(Long userId) {
+        return get(userId).isPresent();
+    }
+
+    /**
+     * 批量判断用户是否都存在：未命中的用户合并为一次查询
+     */
+    public boolean existsAll(Collection<Long> userIds) {
+        List<Long> missing = userIds.stream().filter(id -> getIfPresent(id) == null).toList();
+        return missing.isEmpty() || userRepository.findExistingIds(missing).size() == missing.size();
+    }
+
+    public void invalidate(Long userId) {
+        if (userId != null) {
+            segmentFor(userId).remove(userId);
+        }
+    }
+
+    /**
+     * 命中率统计，用于评估容量
+     */
+    public Map<String, Object> stats() {
+        long h = hits.sum();
+        long m = misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", size());
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("evictions", evictions.sum());
+        stats.put("hitRate", h + m == 0 ? 0.0 : (double) h / (h + m));
+        return stats;
+    }
+
+    // 以下供指标采集使用
+    long hitCount() {
+        return hits.sum();
+    }
+
+    long missCount() {
+        return misses.sum();
+    }
+
+    long evictionCount() {
+        return evictions.sum();
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment s : segments) {
+            size += s.size();
+        }
+        return size;
+    }
+
+    private UserProfile getIfPresent(Long userId) {
+        UserProfile profile = segmentFor(userId).get(userId, System.currentTimeMillis());
+        if (profile != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return profile;
+    }
+
+    private void put(UserProfile profile) {
+        segmentFor(profile.id()).put(profile.id(), profile, System.currentTimeMillis() + ttlMillis);
+    }
+
+    private Segment segmentFor(Long userId) {
+        return segments[(int) (userId ^ (userId >>> 32)) & (SEGMENTS - 1)];
+    }
+
+    private record Entry(UserProfile profile, long expiresAt) {
+    }
+
+    // 按访问顺序排列的 LRU 段
+    private final class Segment {
+        private final int capacity;
+        private final LinkedHashMap<Long, Entry> map;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.map = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                    if (size() > Segment.this.capacity) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized UserProfile get(Long userId, long now) {
+            Entry entry = map.get(userId);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt <= now) {
+                map.remove(userId);
+                evictions.increment();
+                return null;
+            }
+            return entry.profile;
+        }
+
+        synchronized void put(Long userId, UserProfile profile, long expiresAt) {
+            map.put(userId, new Entry(profile, expiresAt));
+        }
+
+        synchronized void remove(Long userId) {
+            map.remove(userId);
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+    }
+}
@@ -1,10 +1,35 @@
 package top.villion.www;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
+
+    @Query("select u.username from User u where u.username in ?1")
+    List<String> findExistingUsernames(Collection<String> usernames);
+
+    @Query("select u.id from User u where u.id in ?1")
+    List<Long> findExistingIds(Collection<Long> ids);
+
+    // 按 id 分页读取发现筛选用的属性，用于构建属性索引：[id, gender, age, region]
+    @Query("select u.id, u.gender, u.age, u.region from User u where u.id > ?1 order by u.id")
+    List<Object[]> findDiscoveryFieldsAfter(Long afterId, Pageable pageable);
+
+    @Query("select new top.villion.www.UserProfile(u.id, u.username, u.avatarUrl, u.gender, u.age, u.region) "
+            + "from User u where u.id = ?1")
+    Optional<UserProfile> findProfileById(Long id);
+
+    String SUMMARY_SELECT = "select new top.villion.www.UserSummary(u.id, u.username, u.avatarUrl, u.gender, u.age, "
+            + "u.region, u.signature, u.createdAt) from User u ";
+
+    // 键集分页：按 id 升序取 afterId 之后的一页
+    @Query(SUMMARY_SELECT + "where u.id > ?1 order by u.id")
+    List<UserSummary> findSummariesAfter(Long afterId, Pageable limit);
 }
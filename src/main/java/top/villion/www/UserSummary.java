@@ -0,0 +1,24 @@
+package top.villion.www;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * 用户公开信息投影：只查询公开列，不含密码和关联集合
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserSummary {
+    private Long id;
+    private String username;
+    private String avatarUrl;
+    private String gender;
+    private Integer age;
+    private String region;
+    private String signature;
+    private Date createdAt;
+}
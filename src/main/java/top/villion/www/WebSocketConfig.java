@@ -1,25 +1,131 @@
 package top.villion.www;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+import java.util.List;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final PresenceChannelInterceptor presenceChannelInterceptor;
+    private final RoomSubscriptionInterceptor roomSubscriptionInterceptor;
+    private final StompMetricsInterceptor stompMetricsInterceptor;
+    private final StompRateLimitInterceptor stompRateLimitInterceptor;
+    private final ReadYourWritesInterceptor readYourWritesInterceptor;
+    private TaskScheduler messageBrokerTaskScheduler;
+
+    // 心跳间隔（毫秒）：超过约 3 个周期未收到心跳的连接由 Broker 断开，触发离线
+    @Value("${app.websocket.heartbeat-ms:10000}")
+    private long heartbeatMillis;
+
+    // 慢消费者：单个会话待发送数据超过上限或单次发送超时即断开，而不是无限缓冲
+    @Value("${app.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+    @Value("${app.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimitMillis;
+
+    @Value("${" + ExecutionConfig.MODE_PROPERTY + ":" + ExecutionConfig.POOLED + "}")
+    private String executionMode;
+
+    // 入站通道（处理 @MessageMapping）线程池，队列满时拒绝新帧而不是无限堆积
+    @Value("${app.execution.inbound.core-size:16}")
+    private int inboundCoreSize;
+    @Value("${app.execution.inbound.max-size:64}")
+    private int inboundMaxSize;
+    @Value("${app.execution.inbound.queue-capacity:10000}")
+    private int inboundQueueCapacity;
+
+    // 出站通道（写 WebSocket）线程池，两种模式都使用
+    @Value("${app.execution.outbound.core-size:16}")
+    private int outboundCoreSize;
+    @Value("${app.execution.outbound.max-size:32}")
+    private int outboundMaxSize;
+    @Value("${app.execution.outbound.queue-capacity:50000}")
+    private int outboundQueueCapacity;
+
+    public WebSocketConfig(PresenceChannelInterceptor presenceChannelInterceptor,
+                           RoomSubscriptionInterceptor roomSubscriptionInterceptor,
+                           StompMetricsInterceptor stompMetricsInterceptor,
+                           StompRateLimitInterceptor stompRateLimitInterceptor,
+                           ReadYourWritesInterceptor readYourWritesInterceptor) {
+        this.presenceChannelInterceptor = presenceChannelInterceptor;
+        this.roomSubscriptionInterceptor = roomSubscriptionInterceptor;
+        this.stompMetricsInterceptor = stompMetricsInterceptor;
+        this.stompRateLimitInterceptor = stompRateLimitInterceptor;
+        this.readYourWritesInterceptor = readYourWritesInterceptor;
+    }
+
+    // Broker 心跳使用框架自带的调度器（需 @Lazy 避免循环依赖）
+    @Autowired
+    public void setMessageBrokerTaskScheduler(@Lazy TaskScheduler messageBrokerTaskScheduler) {
+        this.messageBrokerTaskScheduler = messageBrokerTaskScheduler;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic", "/queue");
+        config.enableSimpleBroker("/topic", "/queue")
+                .setHeartbeatValue(new long[]{heartbeatMillis, heartbeatMillis})
+                .setTaskScheduler(messageBrokerTaskScheduler);
         config.setApplicationDestinationPrefixes("/app");
     }
 
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/ws")
+                .setHandshakeHandler(new UserIdHandshakeHandler())
                 .setAllowedOriginPatterns("http://127.0.0.1:5500")
                 .withSockJS();
     }
+
+    // 紧凑编码转换器排在默认转换器（String、byte[]、JSON）之前，只处理 application/x-dating-compact
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        messageConverters.add(new CompactMessageConverter());
+        return true;
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setSendTimeLimit(sendTimeLimitMillis);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // 绑定会话身份/记录活动，限流，校验房间订阅权限，记录处理耗时，绑定读己之写的当前用户
+        registration.interceptors(presenceChannelInterceptor, stompRateLimitInterceptor,
+                roomSubscriptionInterceptor, stompMetricsInterceptor, readYourWritesInterceptor);
+
+        if (ExecutionConfig.VIRTUAL.equals(executionMode)) {
+            // 每帧一个虚拟线程，慢处理器（阻塞 JPA）不会饿死其他帧
+            ExecutionConfig.requireVirtualThreads();
+            registration.executor(new VirtualThreadTaskExecutor("stomp-in-"));
+        } else {
+            registration.taskExecutor()
+                    .corePoolSize(inboundCoreSize)
+                    .maxPoolSize(inboundMaxSize)
+                    .queueCapacity(inboundQueueCapacity);
+        }
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(outboundCoreSize)
+                .maxPoolSize(outboundMaxSize)
+                .queueCapacity(outboundQueueCapacity);
+    }
 }
\ No newline at end of file